@@ -14,4 +14,8 @@ import java.util.List;
 public class ConnectionSettings {
     private String userAgent;
     private String referer;
+    /**
+     * Сколько байт тела ответа читается, остальное отбрасывается, как maxBodySize в jsoup
+     */
+    private int maxBodySize = 2 * 1024 * 1024;
 }
@@ -0,0 +1,122 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "crawl-settings")
+public class CrawlSettings {
+    /**
+     * Сохранять ли исходный HTML страницы, для поиска нужны только заголовок и текст
+     */
+    private boolean storeHtml = false;
+    /**
+     * Сохранять ли позиции лемм на странице, нужны для сниппетов без разбора текста и поиска фраз в кавычках
+     */
+    private boolean storePositions = false;
+    /**
+     * Общий бюджет одновременно обходимых страниц по всем сайтам
+     */
+    private int maxConcurrency = 64;
+    /**
+     * Обходить страницы на виртуальных потоках, иначе на пуле из max-concurrency потоков ОС
+     */
+    private boolean virtualThreads = true;
+    /**
+     * Сколько страниц одного хоста может обходиться одновременно
+     */
+    private int hostConnections = 2;
+    /**
+     * Начальная скорость запросов к хосту в запросах в секунду
+     */
+    private double hostRateInitial = 2;
+    /**
+     * Нижняя граница скорости запросов к хосту при отступлении
+     */
+    private double hostRateMin = 0.2;
+    /**
+     * Верхняя граница скорости запросов к хосту при разгоне
+     */
+    private double hostRateMax = 20;
+    /**
+     * На сколько запросов в секунду растет скорость после каждого здорового ответа хоста
+     */
+    private double hostRateIncrease = 0.1;
+    /**
+     * Во сколько раз падает скорость при 429, 503, таймауте или росте задержки ответа
+     */
+    private double hostRateDecrease = 0.5;
+    /**
+     * Сколько запросов к хосту можно накопить и запустить подряд без паузы
+     */
+    private int hostBurst = 2;
+    /**
+     * Во сколько раз текущая задержка ответа хоста должна превысить обычную, чтобы считаться перегрузкой
+     */
+    private double hostLatencyFactor = 2;
+    /**
+     * Максимальная пауза по заголовку Retry-After в миллисекундах
+     */
+    private long retryAfterMaxMs = 300000;
+    /**
+     * Соблюдать ли robots.txt: Disallow, Allow и Crawl-delay
+     */
+    private boolean robotsTxt = true;
+    /**
+     * Сколько хостов хранится в кэше robots.txt
+     */
+    private int robotsCacheSize = 1000;
+    /**
+     * Через сколько секунд robots.txt загружается заново
+     */
+    private long robotsTtlSeconds = 86400;
+    /**
+     * Заполнять ли очередь обхода страницами из sitemap до обхода по ссылкам
+     */
+    private boolean sitemaps = true;
+    /**
+     * Сколько файлов sitemap, включая индексы, читается для одного сайта
+     */
+    private int sitemapMaxFiles = 100;
+    /**
+     * Сколько урлов из sitemap одного сайта попадает в очередь обхода
+     */
+    private int sitemapMaxUrls = 100000;
+    /**
+     * Максимальный размер одного файла sitemap в байтах, по протоколу - 50 МБ без сжатия
+     */
+    private int sitemapMaxBytes = 50 * 1024 * 1024;
+    /**
+     * Включить фильтр Блума для найденных урлов очень больших сайтов
+     */
+    private boolean seenBloomFilter = false;
+    /**
+     * Сколько урлов сайта хранится точно, прежде чем новые урлы пойдут в фильтр Блума.
+     * Без фильтра Блума - сколько всего урлов сайта обходится, остальные новые урлы пропускаются
+     */
+    private int seenExactLimit = 200000;
+    /**
+     * На сколько урлов рассчитан фильтр Блума, после стольких урлов в фильтре новые урлы пропускаются
+     */
+    private int seenBloomCapacity = 5000000;
+    /**
+     * Допустимая доля ложных срабатываний фильтра Блума, то есть пропущенных новых страниц
+     */
+    private double seenBloomFalsePositive = 0.001;
+    /**
+     * Сколько урлов очереди обхода сайта держится в памяти, остальные уходят на диск
+     */
+    private int frontierMemorySize = 10000;
+    /**
+     * Сколько урлов пишется в один файл сегмента очереди на диске
+     */
+    private int frontierSegmentSize = 50000;
+    /**
+     * Каталог для сегментов очередей обхода, по умолчанию во временном каталоге
+     */
+    private String frontierDirectory = System.getProperty("java.io.tmpdir") + "/search-engine-frontier";
+}
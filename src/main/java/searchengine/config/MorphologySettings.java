@@ -0,0 +1,17 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "morphology-settings")
+public class MorphologySettings {
+    /**
+     * Максимальное количество словоформ в кэше разбора для каждого языка
+     */
+    private int wordFormCacheSize = 100_000;
+}
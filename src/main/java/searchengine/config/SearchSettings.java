@@ -0,0 +1,41 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "search-settings")
+public class SearchSettings {
+    /**
+     * Сколько сайтов одновременно ранжируется при поиске по всем сайтам
+     */
+    private int siteParallelism = 8;
+    /**
+     * Максимальное количество запросов в кэше результатов
+     */
+    private int queryCacheSize = 500;
+    /**
+     * Сколько лучших страниц запроса сохраняется в кэше для листания выдачи
+     */
+    private int queryCacheDepth = 100;
+    /**
+     * Формула релевантности: bm25 или rankSum (сумма rank лемм)
+     */
+    private String scoringModel = "bm25";
+    /**
+     * Максимальное количество курсоров листания выдачи
+     */
+    private int cursorCacheSize = 1000;
+    /**
+     * Время жизни курсора листания выдачи в секундах
+     */
+    private int cursorTtlSeconds = 600;
+    /**
+     * Максимальный размер окна выдачи (limit) в одном запросе
+     */
+    private int maxLimit = 100;
+}
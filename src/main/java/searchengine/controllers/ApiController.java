@@ -79,7 +79,13 @@ public class ApiController {
 
 
     @GetMapping("/search")
-    public ResponseEntity<SearchResponse> search(@RequestParam String query, @RequestParam(required = false) String site, @RequestParam(required = false, defaultValue = "0") int offset, @RequestParam(required = false, defaultValue = "20") int limit) throws IOException {
-        return ResponseEntity.ok(searchService.search(query, site, offset, limit));
+    public ResponseEntity<SearchResponse> search(@RequestParam(required = false) String query, @RequestParam(required = false) String site, @RequestParam(required = false, defaultValue = "0") int offset, @RequestParam(required = false, defaultValue = "20") int limit, @RequestParam(required = false) String cursor, @RequestParam(required = false, defaultValue = "false") boolean facets) throws IOException {
+        SearchResponse searchResponse = cursor != null && !cursor.isBlank()
+                ? searchService.searchByCursor(cursor, limit, facets)
+                : searchService.search(query, site, offset, limit, facets);
+        if (searchResponse.isBadRequest()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(searchResponse);
+        }
+        return ResponseEntity.ok(searchResponse);
     }
 }
@@ -1,6 +1,8 @@
 package searchengine.dto.search;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -14,4 +16,12 @@ public class SearchResponse {
     private int count;
     private List<SearchData> data;
     private String error;
+    private String nextCursor;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<SiteFacet> facets;
+    /**
+     * Ошибка в параметрах запроса, контроллер отвечает на нее 400 Bad Request. В ответ не выводится
+     */
+    @JsonIgnore
+    private boolean badRequest;
 }
@@ -0,0 +1,10 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+@Data
+public class SiteFacet {
+    private String site;
+    private String siteName;
+    private int count;
+}
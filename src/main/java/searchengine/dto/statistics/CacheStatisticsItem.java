@@ -0,0 +1,13 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class CacheStatisticsItem {
+    private String name;
+    private int size;
+    private int maxSize;
+    private long hits;
+    private long misses;
+    private double hitRatio;
+}
@@ -0,0 +1,13 @@
+package searchengine.dto.statistics;
+
+import lombok.Data;
+
+@Data
+public class HostRateStatisticsItem {
+    private String host;
+    private double rate;
+    private double maxRate;
+    private long latency;
+    private long backoffs;
+    private long retryAfter;
+}
@@ -8,4 +8,6 @@ import java.util.List;
 public class StatisticsData {
     private TotalStatistics total;
     private List<DetailedStatisticsItem> detailed;
+    private List<CacheStatisticsItem> caches;
+    private List<HostRateStatisticsItem> hosts;
 }
@@ -15,14 +15,16 @@ public class IndexEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column(name = "id", nullable = false)
     private Integer id;
-    @ManyToOne(cascade = CascadeType.MERGE, fetch = FetchType.EAGER)
+    @ManyToOne(cascade = CascadeType.MERGE, fetch = FetchType.LAZY)
     @JoinColumn(name = "page_id", nullable = false)
     private PageEntity page;
-    @ManyToOne(cascade = CascadeType.MERGE, fetch = FetchType.EAGER)
+    @ManyToOne(cascade = CascadeType.MERGE, fetch = FetchType.LAZY)
     @JoinColumn(name = "lemma_id", nullable = false)
     private LemmaEntity lemma;
     @Column(name = "lemma_rank", nullable = false)
     private int rank;
+    @Column(name = "positions", columnDefinition = "MEDIUMBLOB")
+    private byte[] positions;
 
     public Integer getPageId(){
         return page.getId();
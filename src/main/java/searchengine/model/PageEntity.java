@@ -22,6 +22,10 @@ public class PageEntity {
     private String path;
     @Column(nullable = false)
     private int code;
+    @Column(columnDefinition = "TEXT")
+    private String title;
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String text;
     @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
     private String content;
 }
@@ -1,31 +1,61 @@
 package searchengine.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.model.IndexEntity;
+import searchengine.repositories.projections.IndexView;
+import searchengine.repositories.projections.PositionsView;
+import searchengine.repositories.projections.PostingView;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 @Transactional()
 public interface IndexRepositories extends JpaRepository<IndexEntity, Integer> {
 
     @Query(value = "select * from index_page where page_id = :page_id and lemma_id = :lemma_id ", nativeQuery = true)
     IndexEntity findByPageIdLemmaId(@Param("page_id") int pageId, @Param("lemma_id") int lemmaId);
 
-    @Query(value = "select * from index_page where lemma_id = :lemma_id ", nativeQuery = true)
-    List<IndexEntity> findByLemmaId(@Param("lemma_id") int lemmaId);
+    @Query(value = "select id, page_id as pageId, lemma_id as lemmaId, lemma_rank as lemmaRank from index_page " +
+            "where lemma_id in :lemma_ids order by lemma_id, page_id", nativeQuery = true)
+    List<IndexView> findViewsByLemmaIds(@Param("lemma_ids") Collection<Integer> lemmaIds);
 
-    @Query(value = "select * from index_page where page_id in :page_ids and lemma_id = :lemma_id ", nativeQuery = true)
-    List<IndexEntity> findByPageIdsLemmaId(@Param("page_ids") List<Integer> pageIds, @Param("lemma_id") int lemmaId);
+    @Query(value = "select id, page_id as pageId, lemma_id as lemmaId, lemma_rank as lemmaRank from index_page " +
+            "where page_id = :page_id", nativeQuery = true)
+    List<IndexView> findViewsByPageId(@Param("page_id") int pageId);
+
+    @Query(value = "select i.page_id as pageId, l.lemma as lemma, i.positions as positions from index_page i " +
+            "join lemma l on l.id = i.lemma_id where i.page_id in :page_ids and l.lemma in :lemmas " +
+            "and i.positions is not null", nativeQuery = true)
+    List<PositionsView> findPositions(@Param("page_ids") Collection<Integer> pageIds, @Param("lemmas") Collection<String> lemmas);
 
     @Modifying
     @Transactional
     @Query(value = "delete from index_page where page_id = :page_id", nativeQuery = true)
     void deleteByPageId(@Param("page_id") int pageId);
 
-    @Query(value = "select * from index_page where page_id = :page_id", nativeQuery = true)
-    List<IndexEntity> findAllByPageId(@Param("page_id") int pageId);
+    @Modifying
+    @Transactional
+    @Query(value = "delete i from index_page i join lemma l on l.id = i.lemma_id where l.site_id = :site_id", nativeQuery = true)
+    void deleteBySiteId(@Param("site_id") int siteId);
+
+    @Query(value = "select l.lemma from index_page i join lemma l on l.id = i.lemma_id where i.page_id = :page_id",
+            nativeQuery = true)
+    List<String> findLemmasByPageId(@Param("page_id") int pageId);
+
+    /**
+     * Читается построчно: MySQL Connector/J отдает строки потоком при fetch size Integer.MIN_VALUE,
+     * поэтому индекс большого сайта не собирается в памяти целиком. Поток нужно читать внутри транзакции и закрыть
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query(value = "select l.lemma as lemma, i.page_id as pageId, i.lemma_rank as lemmaRank from index_page i " +
+            "join lemma l on l.id = i.lemma_id where l.site_id = :site_id order by i.lemma_id, i.page_id", nativeQuery = true)
+    Stream<PostingView> streamPostingsBySiteId(@Param("site_id") int siteId);
 
 }
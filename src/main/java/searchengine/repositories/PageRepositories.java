@@ -1,6 +1,7 @@
 package searchengine.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
@@ -9,8 +10,13 @@ import searchengine.model.PageEntity;
 import java.util.List;
 @Transactional
 public interface PageRepositories extends JpaRepository<PageEntity, Integer> {
-    @Query(value = "select * from page where site_id = :site_id", nativeQuery = true)
-    List<PageEntity> findAllBySiteId(@Param("site_id") int siteId);
+    @Query(value = "select count(*) from page where site_id = :site_id", nativeQuery = true)
+    int countBySiteId(@Param("site_id") int siteId);
+
+    @Modifying
+    @Transactional
+    @Query(value = "delete from page where site_id = :site_id", nativeQuery = true)
+    void deleteBySiteId(@Param("site_id") int siteId);
 
     @Query(value = "select * from page where site_id = :site_id and path = :path limit 1", nativeQuery = true)
     PageEntity findBySiteIdAndPage(@Param("site_id") int siteId, @Param("path") String path);
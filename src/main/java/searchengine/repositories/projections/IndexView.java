@@ -0,0 +1,14 @@
+package searchengine.repositories.projections;
+
+/**
+ * Строка index_page только с примитивными колонками, без загрузки сущностей страницы и леммы
+ */
+public interface IndexView {
+    int getId();
+
+    int getPageId();
+
+    int getLemmaId();
+
+    int getLemmaRank();
+}
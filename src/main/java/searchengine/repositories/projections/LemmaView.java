@@ -0,0 +1,14 @@
+package searchengine.repositories.projections;
+
+/**
+ * Строка lemma без загрузки сущности сайта
+ */
+public interface LemmaView {
+    int getId();
+
+    int getSiteId();
+
+    String getLemma();
+
+    int getFrequency();
+}
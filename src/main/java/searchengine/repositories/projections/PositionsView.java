@@ -0,0 +1,12 @@
+package searchengine.repositories.projections;
+
+/**
+ * Позиции леммы на странице из index_page
+ */
+public interface PositionsView {
+    int getPageId();
+
+    String getLemma();
+
+    byte[] getPositions();
+}
@@ -0,0 +1,12 @@
+package searchengine.repositories.projections;
+
+/**
+ * Строка index_page вместе с леммой, без загрузки сущностей страницы и леммы
+ */
+public interface PostingView {
+    String getLemma();
+
+    int getPageId();
+
+    int getLemmaRank();
+}
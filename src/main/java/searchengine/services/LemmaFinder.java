@@ -5,6 +5,7 @@ import org.apache.lucene.morphology.LuceneMorphology;
 import org.apache.lucene.morphology.WrongCharaterException;
 import org.apache.lucene.morphology.english.EnglishLuceneMorphology;
 import org.apache.lucene.morphology.russian.RussianLuceneMorphology;
+import searchengine.services.cache.BoundedCache;
 
 import java.io.IOException;
 import java.util.*;
@@ -12,23 +13,41 @@ import java.util.*;
 @Slf4j
 public class LemmaFinder {
     private final LuceneMorphology luceneMorphology;
+    private final String[] particlesNames;
+    private final String wordTypeRegex;
+    private final BoundedCache<String, WordForm> wordFormCache;
     private static final String WORD_TYPE_REGEX_RUS = "\\W\\w&&[^а-яА-Я\\s]";
     private static final String WORD_TYPE_REGEX_ENG = "\\W\\w&&[^a-zA-Z\\s]";
     private static final String[] particlesRusNames = new String[]{"МЕЖД", "ПРЕДЛ", "СОЮЗ"};
     private static final String[] particlesEngNames = new String[]{"MC", "CONJ", "PART"};
 
-    public static LemmaFinder getRusInstance() throws IOException {
+    /**
+     * Результат разбора словоформы морфологией, который кладется в кэш
+     *
+     * @param normalForms нормальные формы слова, пустой список если слово не разбирается
+     * @param particle    слово относится к междометиям, предлогам, союзам или частицам
+     * @param correctForm морфологическая информация слова корректна
+     */
+    private record WordForm(List<String> normalForms, boolean particle, boolean correctForm) {
+        private static final WordForm INVALID = new WordForm(List.of(), false, false);
+    }
+
+    public static LemmaFinder getRusInstance(int cacheSize) throws IOException {
         LuceneMorphology morphology = new RussianLuceneMorphology();
-        return new LemmaFinder(morphology);
+        return new LemmaFinder(morphology, particlesRusNames, WORD_TYPE_REGEX_RUS, new BoundedCache<>("rusWordForms", cacheSize));
     }
 
-    public static LemmaFinder getEngInstance() throws IOException {
+    public static LemmaFinder getEngInstance(int cacheSize) throws IOException {
         LuceneMorphology morphology = new EnglishLuceneMorphology();
-        return new LemmaFinder(morphology);
+        return new LemmaFinder(morphology, particlesEngNames, WORD_TYPE_REGEX_ENG, new BoundedCache<>("engWordForms", cacheSize));
     }
 
-    private LemmaFinder(LuceneMorphology luceneMorphology) {
+    private LemmaFinder(LuceneMorphology luceneMorphology, String[] particlesNames, String wordTypeRegex,
+                        BoundedCache<String, WordForm> wordFormCache) {
         this.luceneMorphology = luceneMorphology;
+        this.particlesNames = particlesNames;
+        this.wordTypeRegex = wordTypeRegex;
+        this.wordFormCache = wordFormCache;
     }
 
     private LemmaFinder() {
@@ -36,137 +55,67 @@ public class LemmaFinder {
     }
 
     /**
-     * Метод разделяет текст на слова, находит все леммы и считает их количество на русском.
-     *
-     * @param text текст из которого будут выбираться леммы
-     * @return ключ является леммой, а значение количеством найденных лемм
+     * @return кэш разобранных словоформ, для статистики
      */
-    public Map<String, Integer> collectRusLemmas(String text) {
-        String[] words = arrayContainsRussianWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
-
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticleRus(wordBaseForms)) {
-                continue;
-            }
-
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
-            }
-
-            String normalWord = normalForms.get(0);
-
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
-            }
-        }
-
-        return lemmas;
+    public BoundedCache<?, ?> getWordFormCache() {
+        return wordFormCache;
     }
 
     /**
-     * Метод разделяет текст на слова, находит все леммы и считает их количество на английском.
+     * Лемма слова для подсчета лемм на странице
      *
-     * @param text текст из которого будут выбираться леммы
-     * @return ключ является леммой, а значение количеством найденных лемм
+     * @param word слово в нижнем регистре
+     * @return первая нормальная форма слова или null, если слово служебное или не разбирается
      */
-    public Map<String, Integer> collectEngLemmas(String text) {
-        String[] words = arrayContainsEnglishWords(text);
-        HashMap<String, Integer> lemmas = new HashMap<>();
-
-        for (String word : words) {
-            if (word.isBlank()) {
-                continue;
-            }
-
-            List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-            if (anyWordBaseBelongToParticleEng(wordBaseForms)) {
-                continue;
-            }
-
-            List<String> normalForms = luceneMorphology.getNormalForms(word);
-            if (normalForms.isEmpty()) {
-                continue;
-            }
-
-            String normalWord = normalForms.get(0);
-
-            if (lemmas.containsKey(normalWord)) {
-                lemmas.put(normalWord, lemmas.get(normalWord) + 1);
-            } else {
-                lemmas.put(normalWord, 1);
-            }
+    public String getNormalForm(String word) {
+        WordForm wordForm = getWordForm(word);
+        if (wordForm.particle() || wordForm.normalForms().isEmpty()) {
+            return null;
         }
-
-        return lemmas;
+        return wordForm.normalForms().get(0);
     }
 
-
     /**
-     * @param text текст из которого собираем все леммы
-     * @return набор уникальных лемм найденных в тексте
+     * Леммы слова для поискового запроса
+     *
+     * @param word слово в нижнем регистре
+     * @return все нормальные формы слова или пустой список, если слово служебное или не разбирается
      */
-    public Set<String> getRusLemmaSet(String text) {
-        String[] textArray = arrayContainsRussianWords(text);
-        Set<String> lemmaSet = new HashSet<>();
-        for (String word : textArray) {
-            if (!word.isEmpty() && isCorrectWordFormRus(word)) {
-                List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-                if (anyWordBaseBelongToParticleRus(wordBaseForms)) {
-                    continue;
-                }
-                lemmaSet.addAll(luceneMorphology.getNormalForms(word));
-            }
+    public List<String> getQueryNormalForms(String word) {
+        WordForm wordForm = getWordForm(word);
+        if (!wordForm.correctForm() || wordForm.particle()) {
+            return List.of();
         }
-        return lemmaSet;
+        return wordForm.normalForms();
     }
 
     /**
-     * @param text английский текст из которого собираем все леммы
-     * @return набор уникальных лемм найденных в тексте
+     * Разбор словоформы морфологией с кэшированием: getMorphInfo и getNormalForms вызываются один раз на словоформу
+     *
+     * @param word слово в нижнем регистре
+     * @return результат разбора слова
      */
-    public Set<String> getEngLemmaSet(String text) {
-        String[] textArray = arrayContainsEnglishWords(text);
-        Set<String> lemmaSet = new HashSet<>();
-        for (String word : textArray) {
-            if (!word.isEmpty() && isCorrectWordFormEng(word)) {
-                List<String> wordBaseForms = luceneMorphology.getMorphInfo(word);
-                if (anyWordBaseBelongToParticleEng(wordBaseForms)) {
-                    continue;
-                }
-                lemmaSet.addAll(luceneMorphology.getNormalForms(word));
-            }
-        }
-        return lemmaSet;
+    private WordForm getWordForm(String word) {
+        return wordFormCache.computeIfAbsent(word, this::parseWordForm);
     }
 
-    private boolean anyWordBaseBelongToParticleRus(List<String> wordBaseForms) {
-        return wordBaseForms.stream().anyMatch(this::hasParticlePropertyRus);
-    }
-
-    private boolean anyWordBaseBelongToParticleEng(List<String> wordBaseForms) {
-        return wordBaseForms.stream().anyMatch(this::hasParticlePropertyEng);
+    private WordForm parseWordForm(String word) {
+        try {
+            List<String> wordInfo = luceneMorphology.getMorphInfo(word);
+            return new WordForm(luceneMorphology.getNormalForms(word), anyWordBaseBelongToParticle(wordInfo),
+                    isCorrectWordForm(wordInfo));
+        } catch (WrongCharaterException ex) {
+            log.debug(ex.getMessage());
+            return WordForm.INVALID;
+        }
     }
 
-    private boolean hasParticlePropertyRus(String wordBase) {
-        for (String property : particlesRusNames) {
-            if (wordBase.toUpperCase().contains(property)) {
-                return true;
-            }
-        }
-        return false;
+    private boolean anyWordBaseBelongToParticle(List<String> wordBaseForms) {
+        return wordBaseForms.stream().anyMatch(this::hasParticleProperty);
     }
 
-    private boolean hasParticlePropertyEng(String wordBase) {
-        for (String property : particlesEngNames) {
+    private boolean hasParticleProperty(String wordBase) {
+        for (String property : particlesNames) {
             if (wordBase.toUpperCase().contains(property)) {
                 return true;
             }
@@ -174,59 +123,12 @@ public class LemmaFinder {
         return false;
     }
 
-    private String[] arrayContainsRussianWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^а-я\\s])", " ")
-                .trim()
-                .split("\\s+");
-    }
-
-    private String[] arrayContainsEnglishWords(String text) {
-        return text.toLowerCase(Locale.ROOT)
-                .replaceAll("([^a-z\\s])", " ")
-                .trim()
-                .split("\\s+");
-    }
-
-    private boolean isCorrectWordFormRus(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
-        for (String morphInfo : wordInfo) {
-            if (morphInfo.matches(WORD_TYPE_REGEX_RUS)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    private boolean isCorrectWordFormEng(String word) {
-        List<String> wordInfo = luceneMorphology.getMorphInfo(word);
+    private boolean isCorrectWordForm(List<String> wordInfo) {
         for (String morphInfo : wordInfo) {
-            if (morphInfo.matches(WORD_TYPE_REGEX_ENG)) {
+            if (morphInfo.matches(wordTypeRegex)) {
                 return false;
             }
         }
         return true;
     }
-
-    public String getLemmaByWord(String word){
-        String wordLowerCase = word.toLowerCase();
-        if (checkMatchWord(wordLowerCase)) return "";
-        try {
-            List<String> normalWordForms = luceneMorphology.getNormalForms(wordLowerCase);
-            String wordInfo = luceneMorphology.getMorphInfo(wordLowerCase).toString();
-            if (checkWordInfo(wordInfo)) return "";
-            return normalWordForms.get(0);
-        } catch (WrongCharaterException ex) {
-            log.debug(ex.getMessage());
-        }
-        return "";
-    }
-
-    private boolean checkMatchWord(String word) {
-        return word.isEmpty() || String.valueOf(word.charAt(0)).matches("[a-zA-Z]") || String.valueOf(word.charAt(0)).matches("[0-9]");
-    }
-
-    private boolean checkWordInfo(String wordInfo) {
-        return wordInfo.contains("ПРЕДЛ") || wordInfo.contains("СОЮЗ") || wordInfo.contains("МЕЖД") || wordInfo.contains("MC") || wordInfo.contains("CONJ") || wordInfo.contains("PART");
-    }
 }
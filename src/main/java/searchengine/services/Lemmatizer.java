@@ -0,0 +1,126 @@
+package searchengine.services;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.MorphologySettings;
+import searchengine.services.cache.BoundedCache;
+import searchengine.services.searchindex.TokenPositions;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Общие на все приложение экземпляры LemmaFinder для русского и английского языков.
+ * Словари морфологии загружаются один раз при старте, дальше экземпляры только читаются и безопасны для разных потоков.
+ */
+@Slf4j
+@Component
+public class Lemmatizer {
+    private static final String RUS_PROBE_WORD = "проверки";
+    private static final String ENG_PROBE_WORD = "checks";
+
+    private final LemmaFinder rusLemmaFinder;
+    private final LemmaFinder engLemmaFinder;
+
+    public Lemmatizer(MorphologySettings morphologySettings) throws IOException {
+        log.info("Lemmatizer-> Start loading morphology dictionaries");
+        long start = System.currentTimeMillis();
+        long usedMemoryBefore = getUsedMemory();
+        rusLemmaFinder = LemmaFinder.getRusInstance(morphologySettings.getWordFormCacheSize());
+        long usedMemoryRus = getUsedMemory();
+        engLemmaFinder = LemmaFinder.getEngInstance(morphologySettings.getWordFormCacheSize());
+        long usedMemoryEng = getUsedMemory();
+        checkHealth();
+        log.info("Lemmatizer<- Morphology dictionaries loaded in {} ms, heap: rus ~{} MB, eng ~{} MB",
+                System.currentTimeMillis() - start, toMegabytes(usedMemoryRus - usedMemoryBefore),
+                toMegabytes(usedMemoryEng - usedMemoryRus));
+    }
+
+    /**
+     * Находит леммы на русском и английском и считает их количество.
+     * Текст проходится один раз, каждое слово уходит в морфологию своего алфавита.
+     *
+     * @param text текст из которого будут выбираться леммы
+     * @return ключ является леммой, а значение количеством найденных лемм
+     */
+    public Map<String, Integer> collectLemmas(String text) {
+        Map<String, Integer> lemmas = new HashMap<>();
+        WordTokenizer.tokenize(text, (word, script, start, end) -> {
+            String lemma = getLemmaFinder(script).getNormalForm(word);
+            if (lemma != null) {
+                lemmas.merge(lemma, 1, Integer::sum);
+            }
+        });
+        return lemmas;
+    }
+
+    /**
+     * Как collectLemmas, но для каждой леммы запоминает номера слов и их границы в тексте.
+     * Номер получает каждое слово текста, в том числе служебное, чтобы по номерам проверять идущие подряд слова.
+     *
+     * @param text текст из которого будут выбираться леммы
+     * @return ключ является леммой, а значение позициями леммы в тексте, количество позиций равно количеству лемм
+     */
+    public Map<String, TokenPositions> collectLemmaPositions(String text) {
+        Map<String, TokenPositions> lemmas = new HashMap<>();
+        int[] ordinal = {0};
+        WordTokenizer.tokenize(text, (word, script, start, end) -> {
+            String lemma = getLemmaFinder(script).getNormalForm(word);
+            if (lemma != null) {
+                lemmas.computeIfAbsent(lemma, key -> new TokenPositions()).add(ordinal[0], start, end);
+            }
+            ordinal[0]++;
+        });
+        return lemmas;
+    }
+
+    /**
+     * @param text текст из которого собираем все леммы
+     * @return набор уникальных лемм на русском и английском, найденных в тексте
+     */
+    public Set<String> getLemmaSet(String text) {
+        Set<String> lemmaSet = new HashSet<>();
+        WordTokenizer.tokenize(text, (word, script, start, end) -> lemmaSet.addAll(getLemmaFinder(script).getQueryNormalForms(word)));
+        return lemmaSet;
+    }
+
+    /**
+     * Леммы слова из текста страницы, разобранного WordTokenizer, для сравнения с леммами запроса
+     *
+     * @param word   слово в нижнем регистре
+     * @param script алфавит слова
+     * @return все нормальные формы слова или пустой список, если слово служебное или не разбирается
+     */
+    public List<String> getQueryNormalForms(String word, WordTokenizer.Script script) {
+        return getLemmaFinder(script).getQueryNormalForms(word);
+    }
+
+    /**
+     * @return кэши разобранных словоформ обоих языков, общие для индексации и построения сниппетов
+     */
+    public List<BoundedCache<?, ?>> getWordFormCaches() {
+        return List.of(rusLemmaFinder.getWordFormCache(), engLemmaFinder.getWordFormCache());
+    }
+
+    private LemmaFinder getLemmaFinder(WordTokenizer.Script script) {
+        return script == WordTokenizer.Script.CYRILLIC ? rusLemmaFinder : engLemmaFinder;
+    }
+
+    /**
+     * Проверка при старте, что словари загружены и приводят слова к леммам
+     */
+    private void checkHealth() {
+        if (rusLemmaFinder.getNormalForm(RUS_PROBE_WORD) == null || engLemmaFinder.getNormalForm(ENG_PROBE_WORD) == null) {
+            throw new IllegalStateException("Morphology dictionaries are loaded, but probe words are not lemmatized");
+        }
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long toMegabytes(long bytes) {
+        return Math.max(bytes, 0) / (1024 * 1024);
+    }
+}
@@ -0,0 +1,139 @@
+package searchengine.services;
+
+import java.util.*;
+
+/**
+ * Поиск слов запроса в тексте страницы с морфологией не больше одного раза на словоформу за запрос.
+ * Строится один раз на запрос: леммы запроса превращаются в основы, по основам строится автомат Ахо-Корасик,
+ * который сразу находит формы с неизменной основой. Остальные слова того же алфавита тоже проверяются морфологией,
+ * иначе терялись бы формы с беглой гласной и другим корнем (день - дня, идти - шел, go - went).
+ * Разобранные формы запоминаются на время запроса. Не потокобезопасен, используется одним запросом.
+ */
+public class QueryHighlighter {
+    private static final int SHORT_LEMMA_LENGTH = 4;
+    private static final int MIN_STEM_LENGTH = 2;
+
+    private final Lemmatizer lemmatizer;
+    private final Set<String> queryLemmas;
+    private final StemAutomaton automaton;
+    /**
+     * Алфавиты лемм запроса, слова других алфавитов к запросу относиться не могут
+     */
+    private final Set<WordTokenizer.Script> queryScripts = EnumSet.noneOf(WordTokenizer.Script.class);
+    /**
+     * Известные формы слов запроса: словоформа -> лемма запроса, пустая строка если форма к запросу не относится
+     */
+    private final Map<String, String> surfaceForms = new HashMap<>();
+
+    @FunctionalInterface
+    public interface MatchConsumer {
+        /**
+         * @param start позиция первого символа слова в тексте
+         * @param end   позиция после последнего символа слова в тексте
+         * @param lemma лемма запроса, к которой относится слово
+         */
+        void accept(int start, int end, String lemma);
+    }
+
+    /**
+     * @param lemmatizer  морфология для проверки найденных по основе слов
+     * @param queryLemmas леммы запроса
+     */
+    public QueryHighlighter(Lemmatizer lemmatizer, Set<String> queryLemmas) {
+        this.lemmatizer = lemmatizer;
+        this.queryLemmas = queryLemmas;
+        Set<String> stems = new LinkedHashSet<>();
+        for (String lemma : queryLemmas) {
+            surfaceForms.put(lemma, lemma);
+            stems.add(getStem(lemma));
+            if (!lemma.isEmpty() && WordTokenizer.getScript(lemma.charAt(0)) != null) {
+                queryScripts.add(WordTokenizer.getScript(lemma.charAt(0)));
+            }
+        }
+        this.automaton = new StemAutomaton(new ArrayList<>(stems));
+    }
+
+    /**
+     * Основа леммы: лемма без окончания, чтобы под нее попадали все формы слова с неизменной основой
+     */
+    private static String getStem(String lemma) {
+        int length = lemma.length() <= SHORT_LEMMA_LENGTH ? lemma.length() - 1 : lemma.length() - 2;
+        return lemma.substring(0, Math.min(lemma.length(), Math.max(length, MIN_STEM_LENGTH)));
+    }
+
+    /**
+     * @param text     текст страницы
+     * @param consumer получатель найденных слов запроса в порядке появления в тексте
+     */
+    public void findMatches(String text, MatchConsumer consumer) {
+        int[] checkedTo = {0};
+        automaton.scan(text, (stem, wordStart) -> {
+            if (wordStart < checkedTo[0]) {
+                return;
+            }
+            findOtherForms(text, checkedTo[0], wordStart, consumer);
+            int wordEnd = getWordEnd(text, wordStart);
+            accept(text, wordStart, wordEnd, consumer);
+            checkedTo[0] = wordEnd;
+        });
+        findOtherForms(text, checkedTo[0], text.length(), consumer);
+    }
+
+    /**
+     * Проверяет слова между совпадениями автомата: формы, у которых основа изменилась
+     * @param from начало первого слова или граница слов
+     * @param to   начало следующего совпадения автомата или конец текста
+     */
+    private void findOtherForms(String text, int from, int to, MatchConsumer consumer) {
+        int wordStart = from;
+        while (wordStart < to) {
+            WordTokenizer.Script script = WordTokenizer.getScript(WordTokenizer.toLowerCase(text.charAt(wordStart)));
+            if (script == null) {
+                wordStart++;
+                continue;
+            }
+            int wordEnd = getWordEnd(text, wordStart);
+            if (queryScripts.contains(script)) {
+                accept(text, wordStart, wordEnd, consumer);
+            }
+            wordStart = wordEnd;
+        }
+    }
+
+    private void accept(String text, int wordStart, int wordEnd, MatchConsumer consumer) {
+        String lemma = getQueryLemma(text, wordStart, wordEnd);
+        if (!lemma.isEmpty()) {
+            consumer.accept(wordStart, wordEnd, lemma);
+        }
+    }
+
+    private static int getWordEnd(String text, int wordStart) {
+        WordTokenizer.Script script = WordTokenizer.getScript(WordTokenizer.toLowerCase(text.charAt(wordStart)));
+        int wordEnd = wordStart + 1;
+        while (wordEnd < text.length() && WordTokenizer.getScript(WordTokenizer.toLowerCase(text.charAt(wordEnd))) == script) {
+            wordEnd++;
+        }
+        return wordEnd;
+    }
+
+    /**
+     * @return лемма запроса для слова или пустая строка. Морфология вызывается один раз на словоформу за запрос
+     */
+    private String getQueryLemma(String text, int wordStart, int wordEnd) {
+        StringBuilder word = new StringBuilder(wordEnd - wordStart);
+        for (int i = wordStart; i < wordEnd; i++) {
+            word.append(WordTokenizer.toLowerCase(text.charAt(i)));
+        }
+        return surfaceForms.computeIfAbsent(word.toString(), this::resolveLemma);
+    }
+
+    private String resolveLemma(String word) {
+        WordTokenizer.Script script = WordTokenizer.getScript(word.charAt(0));
+        for (String lemma : lemmatizer.getQueryNormalForms(word, script)) {
+            if (queryLemmas.contains(lemma)) {
+                return lemma;
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,116 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.services.searchindex.SearchQuery;
+
+import java.util.*;
+
+/**
+ * Разбор поискового запроса: слова, операторы и фразы в двойных кавычках.
+ * Слова запроса обязательны, слова через OR, ИЛИ или | объединяются в группу, где достаточно любого слова,
+ * слово с минусом в начале исключает страницы, на которых оно есть.
+ * Номера слов фразы считаются так же, как при индексации позиций, поэтому их можно сравнивать с позициями на странице.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryParser {
+    private static final char QUOTE = '"';
+    private static final char OR_SYMBOL = '|';
+    private static final char EXCLUDE_SYMBOL = '-';
+    private static final Set<String> OR_WORDS = Set.of("OR", "ИЛИ");
+
+    private final Lemmatizer lemmatizer;
+
+    /**
+     * Группы лемм запроса в порядке появления слов
+     */
+    private class GroupsBuilder implements WordTokenizer.TokenConsumer {
+        private final String query;
+        private final Set<String> lemmas = new HashSet<>();
+        private final List<Set<String>> groups = new ArrayList<>();
+        private final Set<String> excluded = new HashSet<>();
+        private Set<String> lastGroup;
+        private boolean joinNext;
+        private int prevEnd;
+
+        private GroupsBuilder(String query) {
+            this.query = query;
+        }
+
+        @Override
+        public void accept(String word, WordTokenizer.Script script, int start, int end) {
+            int orSymbol = query.indexOf(OR_SYMBOL, prevEnd);
+            boolean join = joinNext || (orSymbol >= 0 && orSymbol < start);
+            prevEnd = end;
+            joinNext = false;
+            if (OR_WORDS.contains(query.substring(start, end))) {
+                joinNext = lastGroup != null;
+                return;
+            }
+            List<String> wordLemmas = lemmatizer.getQueryNormalForms(word, script);
+            if (wordLemmas.isEmpty()) {
+                return;
+            }
+            if (isExcluded(start)) {
+                excluded.addAll(wordLemmas);
+                return;
+            }
+            lemmas.addAll(wordLemmas);
+            if (join && lastGroup != null) {
+                lastGroup.addAll(wordLemmas);
+            } else {
+                lastGroup = new HashSet<>(wordLemmas);
+                groups.add(lastGroup);
+            }
+        }
+
+        /**
+         * Минус исключает слово, только если стоит перед ним отдельно, а не внутри слова через дефис
+         */
+        private boolean isExcluded(int start) {
+            return start > 0 && query.charAt(start - 1) == EXCLUDE_SYMBOL
+                    && (start == 1 || !Character.isLetterOrDigit(query.charAt(start - 2)));
+        }
+    }
+
+    /**
+     * @param query поисковый запрос
+     * @return леммы и группы лемм запроса, исключенные леммы и фразы, в которых не меньше двух слов с леммами
+     */
+    public SearchQuery parse(String query) {
+        GroupsBuilder groupsBuilder = new GroupsBuilder(query);
+        WordTokenizer.tokenize(query, groupsBuilder);
+        List<SearchQuery.Phrase> phrases = new ArrayList<>();
+        int open = query.indexOf(QUOTE);
+        while (open >= 0) {
+            int close = query.indexOf(QUOTE, open + 1);
+            if (close < 0) {
+                break;
+            }
+            SearchQuery.Phrase phrase = parsePhrase(query.substring(open + 1, close));
+            if (phrase.terms().size() > 1) {
+                phrases.add(phrase);
+            }
+            open = query.indexOf(QUOTE, close + 1);
+        }
+        return new SearchQuery(groupsBuilder.lemmas, groupsBuilder.groups, groupsBuilder.excluded, phrases);
+    }
+
+    private SearchQuery.Phrase parsePhrase(String text) {
+        List<SearchQuery.PhraseTerm> terms = new ArrayList<>();
+        int[] ordinal = {0};
+        int[] firstOrdinal = {-1};
+        WordTokenizer.tokenize(text, (word, script, start, end) -> {
+            List<String> wordLemmas = lemmatizer.getQueryNormalForms(word, script);
+            if (!wordLemmas.isEmpty()) {
+                if (firstOrdinal[0] < 0) {
+                    firstOrdinal[0] = ordinal[0];
+                }
+                terms.add(new SearchQuery.PhraseTerm(ordinal[0] - firstOrdinal[0], wordLemmas));
+            }
+            ordinal[0]++;
+        });
+        return new SearchQuery.Phrase(terms);
+    }
+}
@@ -0,0 +1,255 @@
+package searchengine.services;
+
+import lombok.RequiredArgsConstructor;
+import org.jsoup.nodes.Entities;
+import org.springframework.stereotype.Component;
+import searchengine.services.searchindex.TokenPositions;
+
+import java.util.*;
+
+/**
+ * Построение сниппета по тексту найденной страницы.
+ * Если при индексации сохранены позиции лемм, слова запроса берутся из них без прохода по тексту,
+ * иначе текст проходится один раз автоматом QueryHighlighter и запоминаются только позиции слов запроса.
+ * По позициям выбираются окна фиксированной длины, в которых больше всего разных лемм запроса,
+ * и разметка строится только для выбранных окон.
+ */
+@Component
+@RequiredArgsConstructor
+public class SnippetBuilder {
+    private static final int FRAGMENT_LENGTH = 160;
+    private static final int CONTEXT_MIN_LENGTH = 25;
+    private static final int MAX_FRAGMENTS = 3;
+    private static final String SEPARATOR = ". . .";
+
+    private final Lemmatizer lemmatizer;
+
+    /**
+     * Найденные в тексте слова запроса в порядке появления
+     */
+    private static class Matches {
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private int[] lemmaIds = new int[16];
+        private int size;
+        private int lemmaCount;
+
+        private void add(int start, int end, int lemmaId) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                lemmaIds = Arrays.copyOf(lemmaIds, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            lemmaIds[size] = lemmaId;
+            size++;
+        }
+    }
+
+    /**
+     * Строится один раз на запрос и используется для всех страниц окна выдачи
+     * @param queryLemmas леммы запроса
+     * @return поиск слов запроса в тексте
+     */
+    public QueryHighlighter createHighlighter(Set<String> queryLemmas) {
+        return new QueryHighlighter(lemmatizer, queryLemmas);
+    }
+
+    /**
+     * @param text        текст страницы
+     * @param highlighter поиск слов запроса, построенный для запроса
+     * @param positions   сохраненные позиции лемм запроса на странице, пустой Map если их нет
+     * @return сниппет с выделенными словами запроса или пустая строка, если слов запроса в тексте нет
+     */
+    public String build(String text, QueryHighlighter highlighter, Map<String, byte[]> positions) {
+        Matches matches = positions.isEmpty() ? null : getMatchesFromPositions(text, positions);
+        if (matches == null) {
+            matches = findMatches(text, highlighter);
+        }
+        if (matches.size == 0) {
+            return "";
+        }
+        return render(text, matches, selectWindows(matches));
+    }
+
+    /**
+     * Сниппет для страницы, в тексте которой слова запроса не нашлись, например слово есть только в заголовке
+     * @param text     текст страницы
+     * @param fallback заголовок или адрес страницы, если текста нет
+     * @return начало текста страницы, обрезанное по границе слова, или fallback
+     */
+    public String buildLeading(String text, String fallback) {
+        String leading = text.strip();
+        if (leading.isEmpty()) {
+            return Entities.escape(fallback);
+        }
+        if (leading.length() <= FRAGMENT_LENGTH) {
+            return Entities.escape(leading);
+        }
+        int end = alignEnd(leading, FRAGMENT_LENGTH, 0);
+        return Entities.escape(leading.substring(0, end == 0 ? FRAGMENT_LENGTH : end)) + SEPARATOR;
+    }
+
+    /**
+     * @return слова запроса по сохраненным позициям или null, если позиции не соответствуют тексту
+     */
+    private static Matches getMatchesFromPositions(String text, Map<String, byte[]> positions) {
+        List<int[]> words = new ArrayList<>();
+        int lemmaId = 0;
+        for (byte[] data : positions.values()) {
+            int id = lemmaId++;
+            TokenPositions.decode(data, (ordinal, start, end) -> words.add(new int[]{start, end, id}));
+        }
+        words.sort(Comparator.comparingInt(word -> word[0]));
+        Matches matches = new Matches();
+        for (int[] word : words) {
+            if (word[1] > text.length()) {
+                return null;
+            }
+            matches.add(word[0], word[1], word[2]);
+        }
+        matches.lemmaCount = lemmaId;
+        return matches;
+    }
+
+    private static Matches findMatches(String text, QueryHighlighter highlighter) {
+        Matches matches = new Matches();
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        highlighter.findMatches(text, (start, end, lemma) -> {
+            Integer lemmaId = lemmaIds.get(lemma);
+            if (lemmaId == null) {
+                lemmaId = lemmaIds.size();
+                lemmaIds.put(lemma, lemmaId);
+            }
+            matches.add(start, end, lemmaId);
+        });
+        matches.lemmaCount = lemmaIds.size();
+        return matches;
+    }
+
+    /**
+     * Жадно выбирает окна: каждое следующее окно добавляет больше всего лемм, которых еще нет в выбранных окнах
+     * @param matches найденные слова запроса
+     * @return окна в порядке появления в тексте, окно - пара [первое слово, последнее слово + 1]
+     */
+    private static List<int[]> selectWindows(Matches matches) {
+        boolean[] covered = new boolean[matches.lemmaCount];
+        List<int[]> windows = new ArrayList<>();
+        while (windows.size() < MAX_FRAGMENTS) {
+            int[] window = findDensestWindow(matches, covered);
+            if (window == null) {
+                break;
+            }
+            windows.add(window);
+            for (int i = window[0]; i < window[1]; i++) {
+                covered[matches.lemmaIds[i]] = true;
+            }
+        }
+        windows.sort(Comparator.comparingInt(window -> window[0]));
+        return windows;
+    }
+
+    /**
+     * Скользящее окно по позициям слов: правая граница идет по словам, левая догоняет, пока окно длиннее FRAGMENT_LENGTH
+     * @param matches найденные слова запроса
+     * @param covered леммы, которые уже есть в выбранных окнах
+     * @return окно с наибольшим количеством новых лемм, при равенстве - с большим числом слов, или null
+     */
+    private static int[] findDensestWindow(Matches matches, boolean[] covered) {
+        int[] counts = new int[matches.lemmaCount];
+        int distinct = 0;
+        int from = 0;
+        int[] best = null;
+        int bestDistinct = 0;
+        int bestCount = 0;
+        for (int to = 0; to < matches.size; to++) {
+            if (counts[matches.lemmaIds[to]]++ == 0 && !covered[matches.lemmaIds[to]]) {
+                distinct++;
+            }
+            while (from < to && matches.ends[to] - matches.starts[from] > FRAGMENT_LENGTH) {
+                if (--counts[matches.lemmaIds[from]] == 0 && !covered[matches.lemmaIds[from]]) {
+                    distinct--;
+                }
+                from++;
+            }
+            int count = to - from + 1;
+            if (distinct > bestDistinct || (distinct > 0 && distinct == bestDistinct && count > bestCount)) {
+                best = new int[]{from, to + 1};
+                bestDistinct = distinct;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static String render(String text, Matches matches, List<int[]> windows) {
+        StringBuilder snippet = new StringBuilder();
+        int prevEnd = -1;
+        int cursor = 0;
+        for (int[] window : windows) {
+            int firstStart = matches.starts[window[0]];
+            int lastEnd = matches.ends[window[1] - 1];
+            int context = Math.max(CONTEXT_MIN_LENGTH, (FRAGMENT_LENGTH - (lastEnd - firstStart)) / 2);
+            int start = alignStart(text, Math.max(firstStart - context, prevEnd), firstStart);
+            int end = alignEnd(text, Math.min(lastEnd + context, text.length()), lastEnd);
+            if (start >= end) {
+                continue;
+            }
+            while (cursor < matches.size && matches.starts[cursor] < start) {
+                cursor++;
+            }
+            snippet.append(SEPARATOR);
+            cursor = appendHighlighted(snippet, text, start, end, matches, cursor);
+            prevEnd = end;
+        }
+        return snippet.append(SEPARATOR).toString();
+    }
+
+    /**
+     * Переносит начало фрагмента на начало слова, чтобы не резать слово, и пропускает пробелы
+     */
+    private static int alignStart(String text, int start, int firstMatchStart) {
+        start = Math.max(start, 0);
+        if (start > 0 && !Character.isWhitespace(text.charAt(start - 1))) {
+            while (start < firstMatchStart && !Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+        }
+        while (start < firstMatchStart && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Переносит конец фрагмента на конец слова, чтобы не резать слово, и убирает пробелы
+     */
+    private static int alignEnd(String text, int end, int lastMatchEnd) {
+        if (end < text.length() && !Character.isWhitespace(text.charAt(end))) {
+            while (end > lastMatchEnd && !Character.isWhitespace(text.charAt(end - 1))) {
+                end--;
+            }
+        }
+        while (end > lastMatchEnd && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Добавляет фрагмент текста с выделением жирным всех слов запроса внутри него
+     * @return позиция первого слова запроса после фрагмента
+     */
+    private static int appendHighlighted(StringBuilder snippet, String text, int start, int end, Matches matches, int cursor) {
+        int position = start;
+        while (cursor < matches.size && matches.ends[cursor] <= end) {
+            snippet.append(Entities.escape(text.substring(position, matches.starts[cursor])))
+                    .append("<b>").append(text, matches.starts[cursor], matches.ends[cursor]).append("</b>");
+            position = matches.ends[cursor];
+            cursor++;
+        }
+        snippet.append(Entities.escape(text.substring(position, end)));
+        return cursor;
+    }
+}
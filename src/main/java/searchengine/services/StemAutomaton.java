@@ -0,0 +1,115 @@
+package searchengine.services;
+
+import java.util.*;
+
+/**
+ * Автомат Ахо-Корасик по основам слов. Текст нормализуется так же, как в WordTokenizer,
+ * и проходится один раз, совпадения отдаются только если основа стоит в начале слова.
+ */
+public class StemAutomaton {
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<Integer> fail = new ArrayList<>();
+    /**
+     * Индекс основы, которая заканчивается в узле, или -1
+     */
+    private final List<Integer> stemIndex = new ArrayList<>();
+    /**
+     * Ближайший по ссылкам неудачи узел, в котором заканчивается основа, или -1
+     */
+    private final List<Integer> outputLink = new ArrayList<>();
+    private final int[] stemLengths;
+
+    @FunctionalInterface
+    public interface MatchConsumer {
+        /**
+         * @param stem      индекс основы в списке, по которому построен автомат
+         * @param wordStart позиция начала слова в тексте
+         */
+        void accept(int stem, int wordStart);
+    }
+
+    /**
+     * @param stems основы в нижнем регистре, буква ё заменена на е
+     */
+    public StemAutomaton(List<String> stems) {
+        stemLengths = new int[stems.size()];
+        addNode();
+        for (int i = 0; i < stems.size(); i++) {
+            addStem(stems.get(i), i);
+        }
+        buildFailLinks();
+    }
+
+    private int addNode() {
+        transitions.add(new HashMap<>());
+        fail.add(0);
+        stemIndex.add(-1);
+        outputLink.add(-1);
+        return transitions.size() - 1;
+    }
+
+    private void addStem(String stem, int index) {
+        int node = 0;
+        for (int i = 0; i < stem.length(); i++) {
+            Integer next = transitions.get(node).get(stem.charAt(i));
+            if (next == null) {
+                next = addNode();
+                transitions.get(node).put(stem.charAt(i), next);
+            }
+            node = next;
+        }
+        stemIndex.set(node, index);
+        stemLengths[index] = stem.length();
+    }
+
+    private void buildFailLinks() {
+        Deque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> transition : transitions.get(node).entrySet()) {
+                int child = transition.getValue();
+                int state = fail.get(node);
+                while (state != 0 && !transitions.get(state).containsKey(transition.getKey())) {
+                    state = fail.get(state);
+                }
+                Integer target = node == 0 ? null : transitions.get(state).get(transition.getKey());
+                int failNode = target == null ? 0 : target;
+                fail.set(child, failNode);
+                outputLink.set(child, stemIndex.get(failNode) >= 0 ? failNode : outputLink.get(failNode));
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * @param text     текст страницы
+     * @param consumer получатель основ, с которых начинаются слова текста
+     */
+    public void scan(CharSequence text, MatchConsumer consumer) {
+        int state = 0;
+        int wordStart = 0;
+        WordTokenizer.Script wordScript = null;
+        for (int i = 0; i < text.length(); i++) {
+            char symbol = WordTokenizer.toLowerCase(text.charAt(i));
+            WordTokenizer.Script script = WordTokenizer.getScript(symbol);
+            if (script != wordScript) {
+                state = 0;
+                wordStart = i;
+                wordScript = script;
+            }
+            if (script == null) {
+                continue;
+            }
+            while (state != 0 && !transitions.get(state).containsKey(symbol)) {
+                state = fail.get(state);
+            }
+            state = transitions.get(state).getOrDefault(symbol, 0);
+            for (int node = stemIndex.get(state) >= 0 ? state : outputLink.get(state); node > 0; node = outputLink.get(node)) {
+                int stem = stemIndex.get(node);
+                if (i + 1 - stemLengths[stem] == wordStart) {
+                    consumer.accept(stem, wordStart);
+                }
+            }
+        }
+    }
+}
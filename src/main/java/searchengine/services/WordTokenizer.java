@@ -0,0 +1,77 @@
+package searchengine.services;
+
+/**
+ * Разбивает текст на слова за один проход без промежуточных копий всего текста.
+ * Слово - непрерывная последовательность русских или латинских букв одного алфавита,
+ * слова отдаются в нижнем регистре вместе с алфавитом и позицией в исходном тексте.
+ */
+public class WordTokenizer {
+
+    public enum Script {
+        CYRILLIC, LATIN
+    }
+
+    @FunctionalInterface
+    public interface TokenConsumer {
+        /**
+         * @param word   слово в нижнем регистре, буква ё заменена на е
+         * @param script алфавит слова
+         * @param start  позиция первого символа слова в тексте
+         * @param end    позиция после последнего символа слова в тексте
+         */
+        void accept(String word, Script script, int start, int end);
+    }
+
+    private WordTokenizer() {
+        throw new RuntimeException("Disallow construct");
+    }
+
+    /**
+     * @param text     текст, который разбивается на слова
+     * @param consumer получатель найденных слов
+     */
+    public static void tokenize(CharSequence text, TokenConsumer consumer) {
+        StringBuilder word = new StringBuilder();
+        Script wordScript = null;
+        int wordStart = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char symbol = toLowerCase(text.charAt(i));
+            Script script = getScript(symbol);
+            if (script != wordScript && wordScript != null) {
+                consumer.accept(word.toString(), wordScript, wordStart, i);
+                word.setLength(0);
+            }
+            if (script != null && script != wordScript) {
+                wordStart = i;
+            }
+            if (script != null) {
+                word.append(symbol);
+            }
+            wordScript = script;
+        }
+        if (wordScript != null) {
+            consumer.accept(word.toString(), wordScript, wordStart, length);
+        }
+    }
+
+    static char toLowerCase(char symbol) {
+        if (symbol >= 'A' && symbol <= 'Z') {
+            return (char) (symbol + ('a' - 'A'));
+        } else if (symbol >= 'А' && symbol <= 'Я') {
+            return (char) (symbol + ('а' - 'А'));
+        } else if (symbol == 'ё' || symbol == 'Ё') {
+            return 'е';
+        }
+        return symbol;
+    }
+
+    static Script getScript(char symbol) {
+        if (symbol >= 'а' && symbol <= 'я') {
+            return Script.CYRILLIC;
+        } else if (symbol >= 'a' && symbol <= 'z') {
+            return Script.LATIN;
+        }
+        return null;
+    }
+}
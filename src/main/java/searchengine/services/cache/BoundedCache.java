@@ -0,0 +1,149 @@
+package searchengine.services.cache;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Ограниченный по размеру потокобезопасный кэш с вытеснением давно не используемых записей.
+ * Ключи раскладываются по сегментам, каждый сегмент - LinkedHashMap в порядке доступа под своей блокировкой,
+ * поэтому потоки с разными ключами почти не мешают друг другу. Размеры сегментов в сумме равны maxSize,
+ * для маленьких кэшей сегментов меньше, чтобы в каждом помещалась хотя бы одна запись. Считает попадания и промахи.
+ *
+ * @param <K> ключ
+ * @param <V> значение
+ */
+public class BoundedCache<K, V> {
+    private static final int MAX_SEGMENTS_COUNT = 16;
+
+    @Getter
+    private final String name;
+    @Getter
+    private final int maxSize;
+    private final Segment<K, V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param name    название кэша для статистики
+     * @param maxSize максимальное количество записей
+     */
+    @SuppressWarnings("unchecked")
+    public BoundedCache(String name, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache " + name + " size must be positive: " + maxSize);
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+        int segmentsCount = Integer.highestOneBit(Math.min(maxSize, MAX_SEGMENTS_COUNT));
+        this.segments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            segments[i] = new Segment<>(maxSize / segmentsCount + (i < maxSize % segmentsCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param key ключ
+     * @return значение из кэша или null, если его нет
+     */
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Значение вычисляется без блокировки сегмента, поэтому при гонке может быть вычислено дважды
+     * @param key      ключ
+     * @param function вычисление значения при промахе
+     * @return значение из кэша или вычисленное значение
+     */
+    public V computeIfAbsent(K key, Function<K, V> function) {
+        V value = get(key);
+        if (value == null) {
+            value = function.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return доля попаданий от всех обращений
+     */
+    public double getHitRatio() {
+        long hitsCount = hits.sum();
+        long requestsCount = hitsCount + misses.sum();
+        return requestsCount == 0 ? 0 : (double) hitsCount / requestsCount;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static class Segment<K, V> extends LinkedHashMap<K, V> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
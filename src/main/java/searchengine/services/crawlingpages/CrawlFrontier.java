@@ -0,0 +1,174 @@
+package searchengine.services.crawlingpages;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlSettings;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+/**
+ * Очередь урлов сайта, которые еще нужно обойти. Голова очереди ограничена frontier-memory-size урлами в памяти,
+ * остальное дописывается в конец сегментов на диске и читается обратно, когда голова опустеет.
+ * Порядок обхода сохраняется: пока на диске есть урлы, новые урлы тоже идут на диск.
+ * Прочитанный сегмент сразу удаляется, поэтому память обхода не зависит от размера сайта.
+ */
+@Slf4j
+public class CrawlFrontier implements Closeable {
+    private final int headCapacity;
+    private final int segmentRecords;
+    private final Path directory;
+    private final ArrayDeque<String> head = new ArrayDeque<>();
+    /**
+     * Дописанные и закрытые сегменты в порядке записи
+     */
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private DataOutputStream writer;
+    private Path writerPath;
+    private int writerCount;
+    private DataInputStream reader;
+    private Segment readerSegment;
+    private int readerRemaining;
+    /**
+     * Сколько урлов лежит на диске и еще не прочитано
+     */
+    private long spilled;
+
+    /**
+     * @param path  файл сегмента
+     * @param count количество урлов в сегменте
+     */
+    private record Segment(Path path, int count) {
+    }
+
+    /**
+     * @param crawlSettings параметры обхода сайтов из конфига
+     * @param directory     каталог для сегментов этой очереди
+     */
+    public CrawlFrontier(CrawlSettings crawlSettings, Path directory) {
+        this.headCapacity = Math.max(crawlSettings.getFrontierMemorySize(), 1);
+        this.segmentRecords = Math.max(crawlSettings.getFrontierSegmentSize(), 1);
+        this.directory = directory;
+    }
+
+    /**
+     * @param url урл, который нужно обойти
+     */
+    public synchronized void push(String url) {
+        if (spilled == 0 && head.size() < headCapacity) {
+            head.add(url);
+            return;
+        }
+        try {
+            write(url);
+        } catch (UTFDataFormatException e) {
+            log.warn("CrawlFrontier-> url is too long, skipped: {}", url.substring(0, 100));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return следующий урл или null, если очередь пуста
+     */
+    public synchronized String poll() {
+        if (head.isEmpty() && spilled > 0) {
+            try {
+                refill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return head.poll();
+    }
+
+    public synchronized boolean isEmpty() {
+        return head.isEmpty() && spilled == 0;
+    }
+
+    private void write(String url) throws IOException {
+        if (writer == null) {
+            Files.createDirectories(directory);
+            writerPath = Files.createTempFile(directory, "frontier-", ".seg");
+            writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(writerPath)));
+            writerCount = 0;
+        }
+        writer.writeUTF(url);
+        writerCount++;
+        spilled++;
+        if (writerCount >= segmentRecords) {
+            closeWriter();
+        }
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.close();
+        segments.add(new Segment(writerPath, writerCount));
+        writer = null;
+        writerPath = null;
+    }
+
+    /**
+     * Читает урлы с диска в голову очереди. Если закрытых сегментов нет, закрывается текущий записываемый
+     */
+    private void refill() throws IOException {
+        while (head.size() < headCapacity && spilled > 0) {
+            if (reader == null) {
+                if (segments.isEmpty()) {
+                    closeWriter();
+                }
+                readerSegment = segments.poll();
+                reader = new DataInputStream(new BufferedInputStream(Files.newInputStream(readerSegment.path())));
+                readerRemaining = readerSegment.count();
+            }
+            head.add(reader.readUTF());
+            readerRemaining--;
+            spilled--;
+            if (readerRemaining == 0) {
+                closeReader();
+            }
+        }
+    }
+
+    private void closeReader() throws IOException {
+        reader.close();
+        Files.deleteIfExists(readerSegment.path());
+        reader = null;
+        readerSegment = null;
+    }
+
+    /**
+     * Удаляет сегменты, которые остались на диске, например после остановки индексации
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (reader != null) {
+                closeReader();
+            }
+            closeWriter();
+            for (Segment segment : segments) {
+                Files.deleteIfExists(segment.path());
+            }
+            segments.clear();
+            head.clear();
+            spilled = 0;
+            if (Files.isDirectory(directory)) {
+                Files.deleteIfExists(directory);
+            }
+        } catch (IOException e) {
+            log.warn("CrawlFrontier-> segments were not deleted: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package searchengine.services.crawlingpages;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlSettings;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общий планировщик обхода всех сайтов. Задачи ставятся в очередь своего хоста, а запускаются на общем пуле
+ * с глобальным бюджетом одновременных задач (crawl-settings.max-concurrency). По умолчанию задачи идут
+ * на виртуальных потоках: ожидание ответа сайта не занимает поток ОС, и бюджет ограничивает только нагрузку на сайты и БД.
+ * Вежливость к хосту соблюдает планировщик: не больше host-connections задач хоста одновременно (при Crawl-delay -
+ * одной) и не быстрее, чем разрешает HostRateLimiter. Пока хост ждет, рабочие потоки заняты задачами других хостов,
+ * а планировщик просыпается по таймеру к ближайшему разрешенному запуску.
+ */
+@Slf4j
+@Component
+public class CrawlScheduler {
+    private final int maxConcurrency;
+    private final HostRateLimiter hostRateLimiter;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+    /**
+     * Очереди хостов в порядке появления по ключу HostRateLimiter.hostKey, чтобы урлы одного хоста с разным
+     * регистром или www шли через одну очередь и один лимит соединений. Доступ только под блокировкой планировщика
+     */
+    private final Map<String, HostQueue> hosts = new LinkedHashMap<>();
+    private int running;
+    private long wakeUpAt = Long.MAX_VALUE;
+
+    /**
+     * Задача обхода одной страницы
+     */
+    public interface CrawlTask extends Runnable {
+        /**
+         * @return задача больше не нужна, например индексация остановлена
+         */
+        boolean isCancelled();
+
+        /**
+         * Вызывается вместо run для отмененной задачи, без ожидания очереди хоста
+         */
+        void cancel();
+    }
+
+    /**
+     * Очередь задач одного хоста
+     */
+    private static class HostQueue {
+        private final ArrayDeque<CrawlTask> tasks = new ArrayDeque<>();
+        private int running;
+    }
+
+    public CrawlScheduler(CrawlSettings crawlSettings, HostRateLimiter hostRateLimiter) {
+        this.maxConcurrency = Math.max(crawlSettings.getMaxConcurrency(), 1);
+        this.hostRateLimiter = hostRateLimiter;
+        this.workers = crawlSettings.isVirtualThreads()
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("crawler-", 0).factory())
+                : Executors.newFixedThreadPool(maxConcurrency, Thread.ofPlatform().name("crawler-", 0).factory());
+        this.timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("crawl-timer").daemon().factory());
+    }
+
+    /**
+     * @param host хост страницы
+     * @param task задача обхода страницы
+     */
+    public void submit(String host, CrawlTask task) {
+        synchronized (this) {
+            hosts.computeIfAbsent(HostRateLimiter.hostKey(host), key -> new HostQueue()).tasks.add(task);
+        }
+        dispatch();
+    }
+
+    /**
+     * Запускает все задачи, которым разрешено стартовать сейчас, и заводит таймер на ближайший следующий запуск.
+     * Отмененные задачи снимаются с очереди сразу.
+     */
+    private void dispatch() {
+        List<CrawlTask> cancelled = new ArrayList<>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            long nextStartAt = Long.MAX_VALUE;
+            Iterator<Map.Entry<String, HostQueue>> iterator = hosts.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, HostQueue> entry = iterator.next();
+                HostQueue hostQueue = entry.getValue();
+                while (!hostQueue.tasks.isEmpty() && hostQueue.tasks.peek().isCancelled()) {
+                    cancelled.add(hostQueue.tasks.poll());
+                }
+                int hostConnections = hostRateLimiter.getConnections(entry.getKey());
+                while (!hostQueue.tasks.isEmpty() && running < maxConcurrency && hostQueue.running < hostConnections) {
+                    long waitMillis = hostRateLimiter.tryAcquire(entry.getKey(), now);
+                    if (waitMillis > 0) {
+                        nextStartAt = Math.min(nextStartAt, now + waitMillis);
+                        break;
+                    }
+                    start(hostQueue, hostQueue.tasks.poll());
+                }
+                if (hostQueue.tasks.isEmpty() && hostQueue.running == 0) {
+                    iterator.remove();
+                }
+            }
+            scheduleWakeUp(nextStartAt, now);
+        }
+        cancelled.forEach(CrawlTask::cancel);
+    }
+
+    private void start(HostQueue hostQueue, CrawlTask task) {
+        hostQueue.running++;
+        running++;
+        workers.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("CrawlScheduler-> crawl task failed: {}", e.getMessage());
+            } finally {
+                synchronized (this) {
+                    hostQueue.running--;
+                    running--;
+                }
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * Таймер заводится, только если нужен раньше уже заведенного
+     */
+    private void scheduleWakeUp(long nextStartAt, long now) {
+        if (nextStartAt == Long.MAX_VALUE || (wakeUpAt > now && wakeUpAt <= nextStartAt)) {
+            return;
+        }
+        wakeUpAt = nextStartAt;
+        timer.schedule(() -> {
+            synchronized (this) {
+                wakeUpAt = Long.MAX_VALUE;
+            }
+            dispatch();
+        }, nextStartAt - now, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+}
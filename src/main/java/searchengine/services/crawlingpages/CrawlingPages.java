@@ -0,0 +1,318 @@
+package searchengine.services.crawlingpages;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlSettings;
+import searchengine.model.SiteEntity;
+import searchengine.model.StatusSite;
+import searchengine.repositories.IndexRepositories;
+import searchengine.repositories.LemmaRepositories;
+import searchengine.repositories.PageRepositories;
+import searchengine.repositories.SiteRepositories;
+import searchengine.services.Lemmatizer;
+import searchengine.services.interfaces.PageIndexerService;
+import searchengine.services.searchindex.InvertedIndex;
+
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+@Slf4j
+public class CrawlingPages {
+
+    /**
+     * Обход всех сайтов по страницам через общий планировщик
+     * @param sitesList список индексируемых страниц сохраненных в БД
+     * @param siteRepositories репозторий для взаимодейсвтия с таблицей сайтов
+     * @param pageRepositories репозторий для взаимодейсвтия с таблицей страниц
+     * @param statusIndexingProcess статус индексации, запущена или нет
+     * @param pageFetcher загрузка страниц общим http-клиентом
+     * @param crawlSettings параметры обхода сайтов из конфига
+     * @param lemmaRepositories репозторий для взаимодейсвтия с таблицей лемм
+     * @param indexRepositories репозторий для взаимодейсвтия с таблицей индексов
+     * @param pageIndexerService сервис для работы с индексацией страниц
+     * @param invertedIndex обратный индекс в памяти
+     * @param lemmatizer общие экземпляры LemmaFinder
+     * @param crawlScheduler общий планировщик обхода с бюджетом запросов и очередями хостов
+     * @param robotsCache кэш правил robots.txt по хостам
+     * @param sitemapReader чтение sitemap для начального заполнения очереди
+     * @throws InterruptedException
+     */
+    public static void crawlingPages(List<SiteEntity> sitesList, SiteRepositories siteRepositories, PageRepositories pageRepositories,
+                                     AtomicBoolean statusIndexingProcess, PageFetcher pageFetcher,
+                                     CrawlSettings crawlSettings, LemmaRepositories lemmaRepositories, IndexRepositories indexRepositories,
+                                     PageIndexerService pageIndexerService, InvertedIndex invertedIndex,
+                                     Lemmatizer lemmatizer, CrawlScheduler crawlScheduler, RobotsCache robotsCache,
+                                     SitemapReader sitemapReader) throws InterruptedException {
+        log.info("crawlingPages-> Start method crawling pages");
+        List<SiteCrawl> siteCrawls = new ArrayList<>();
+        for (SiteEntity site : sitesList) {
+            SiteCrawl siteCrawl = new SiteCrawl(site, (siteEntity, url, seenUrls) -> new TreeRecursive(siteEntity, url,
+                    seenUrls, siteRepositories, pageRepositories, statusIndexingProcess, pageFetcher, crawlSettings,
+                    lemmaRepositories, indexRepositories, pageIndexerService, invertedIndex, lemmatizer),
+                    statusIndexingProcess, crawlScheduler, crawlSettings, robotsCache, sitemapReader);
+            siteCrawls.add(siteCrawl);
+            siteCrawl.start();
+        }
+        for (SiteCrawl siteCrawl : siteCrawls) {
+            try {
+                siteCrawl.done.get();
+            } catch (ExecutionException e) {
+                siteCrawl.failed = true;
+            }
+            finishIndexingSite(siteRepositories, statusIndexingProcess, siteCrawl);
+        }
+        statusIndexingProcess.set(false);
+    }
+
+    @FunctionalInterface
+    interface PageTaskFactory {
+        TreeRecursive create(SiteEntity site, String url, UrlSeenSet seenUrls);
+    }
+
+    /**
+     * Обход одного сайта. Первая задача загружает robots.txt и кладет в очередь главную страницу, затем каждый файл
+     * sitemap загружается отдельной задачей планировщика и кладет в очередь свои страницы, так загрузки robots.txt
+     * и sitemap идут с той же скоростью хоста, что и страницы, а рабочий поток не ждет токена. Урлы ждут
+     * в CrawlFrontier, планировщику отдается не больше queueLimit задач сайта, следующая задача берется из очереди,
+     * когда завершается предыдущая. Урлы, запрещенные robots.txt,
+     * в очередь не попадают. Обход закончен, когда очередь пуста и не осталось задач у планировщика
+     */
+    private static class SiteCrawl {
+        private final SiteEntity site;
+        private final String host;
+        private final PageTaskFactory pageTaskFactory;
+        private final AtomicBoolean statusIndexingProcess;
+        private final CrawlScheduler crawlScheduler;
+        private final CrawlSettings crawlSettings;
+        private final RobotsCache robotsCache;
+        private final SitemapReader sitemapReader;
+        private final UrlSeenSet seenUrls;
+        private final CrawlFrontier frontier;
+        private final int queueLimit;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        /**
+         * Задачи сайта, отданные планировщику и еще не завершенные. Доступ под блокировкой обхода
+         */
+        private int queued;
+        /**
+         * Загруженные и поставленные в очередь файлы sitemap и количество взятых из них урлов. Доступ под блокировкой обхода
+         */
+        private final Set<String> sitemapFiles = new HashSet<>();
+        private int sitemapUrls;
+        private volatile boolean failed;
+        private volatile RobotsRules robotsRules = RobotsRules.ALLOW_ALL;
+
+        private SiteCrawl(SiteEntity site, PageTaskFactory pageTaskFactory, AtomicBoolean statusIndexingProcess,
+                          CrawlScheduler crawlScheduler, CrawlSettings crawlSettings, RobotsCache robotsCache,
+                          SitemapReader sitemapReader) {
+            this.site = site;
+            this.host = URI.create(site.getUrl()).getHost();
+            this.pageTaskFactory = pageTaskFactory;
+            this.statusIndexingProcess = statusIndexingProcess;
+            this.crawlScheduler = crawlScheduler;
+            this.crawlSettings = crawlSettings;
+            this.robotsCache = robotsCache;
+            this.sitemapReader = sitemapReader;
+            this.seenUrls = new UrlSeenSet(crawlSettings);
+            this.frontier = new CrawlFrontier(crawlSettings, Path.of(crawlSettings.getFrontierDirectory(), "site-" + site.getId()));
+            this.queueLimit = Math.max(crawlSettings.getHostConnections(), 1) * 2;
+        }
+
+        private void start() {
+            log.info("indexingSite-> Start method indexing site: {}", site.getUrl());
+            seenUrls.add(site.getUrl());
+            synchronized (this) {
+                queued++;
+            }
+            submit(this::seed);
+        }
+
+        /**
+         * Загружает правила robots.txt и ставит в очередь планировщика файлы sitemap
+         * @return главная страница сайта
+         */
+        private List<String> seed() {
+            if (crawlSettings.isRobotsTxt()) {
+                robotsRules = robotsCache.getRules(site.getUrl());
+            }
+            if (crawlSettings.isSitemaps()) {
+                submitSitemaps(robotsRules.getSitemaps().isEmpty()
+                        ? List.of(site.getUrl().replaceAll("/+$", "") + "/sitemap.xml") : robotsRules.getSitemaps());
+            }
+            return List.of(site.getUrl());
+        }
+
+        /**
+         * Ставит в очередь планировщика еще не загруженные файлы sitemap, пока не исчерпаны sitemap-max-files и sitemap-max-urls
+         * @param sitemaps адреса файлов sitemap
+         */
+        private void submitSitemaps(List<String> sitemaps) {
+            List<String> accepted = new ArrayList<>();
+            synchronized (this) {
+                for (String sitemap : sitemaps) {
+                    if (isStopped() || sitemapFiles.size() >= crawlSettings.getSitemapMaxFiles()
+                            || sitemapUrls >= crawlSettings.getSitemapMaxUrls()) {
+                        break;
+                    }
+                    if (sitemapFiles.add(sitemap)) {
+                        accepted.add(sitemap);
+                        queued++;
+                    }
+                }
+            }
+            accepted.forEach(sitemap -> submit(() -> readSitemap(sitemap)));
+        }
+
+        /**
+         * Загружает один файл sitemap, вложенные sitemap ставит в очередь планировщика
+         * @return страницы сайта из файла, сначала недавно измененные
+         */
+        private List<String> readSitemap(String sitemap) {
+            SitemapReader.SitemapFile sitemapFile = sitemapReader.read(sitemap, host);
+            submitSitemaps(sitemapFile.sitemaps());
+            List<String> urls = new ArrayList<>();
+            for (SitemapReader.SitemapUrl sitemapUrl : sitemapFile.urls()) {
+                String url = sitemapUrl.url().endsWith("/") ? sitemapUrl.url() : sitemapUrl.url() + "/";
+                if (!isSitePage(url)) {
+                    continue;
+                }
+                synchronized (this) {
+                    if (sitemapUrls >= crawlSettings.getSitemapMaxUrls()) {
+                        break;
+                    }
+                    if (seenUrls.add(url)) {
+                        urls.add(url);
+                        sitemapUrls++;
+                    }
+                }
+            }
+            return urls;
+        }
+
+        /**
+         * Sitemap может ссылаться на другие хосты и на файлы, обходим только страницы этого сайта
+         */
+        private boolean isSitePage(String url) {
+            String pageHost;
+            try {
+                pageHost = URI.create(url).getHost();
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+            return pageHost != null && HostRateLimiter.hostKey(pageHost).equals(HostRateLimiter.hostKey(host))
+                    && Parsing.AllowedUrl(url) && !Parsing.allowedExtension(url);
+        }
+
+        private boolean isStopped() {
+            return failed || !statusIndexingProcess.get();
+        }
+
+        /**
+         * Отдает планировщику урлы из очереди, пока у сайта есть свободные места, и завершает обход, если работы нет
+         */
+        private void schedule() {
+            List<String> urls = new ArrayList<>();
+            boolean finished;
+            synchronized (this) {
+                String url;
+                while (!isStopped() && queued < queueLimit && (url = frontier.poll()) != null) {
+                    urls.add(url);
+                    queued++;
+                }
+                finished = queued == 0 && (isStopped() || frontier.isEmpty());
+            }
+            urls.forEach(url -> submit(() -> pageTaskFactory.create(site, url, seenUrls).compute()));
+            if (finished && !done.isDone()) {
+                frontier.close();
+                done.complete(null);
+            }
+        }
+
+        /**
+         * @param work загрузка страницы, возвращает новые урлы для очереди
+         */
+        private void submit(Supplier<List<String>> work) {
+            crawlScheduler.submit(host, new CrawlScheduler.CrawlTask() {
+                @Override
+                public void run() {
+                    List<String> links = List.of();
+                    try {
+                        links = work.get();
+                    } catch (RuntimeException e) {
+                        failed = true;
+                    } finally {
+                        complete(links);
+                    }
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return isStopped();
+                }
+
+                @Override
+                public void cancel() {
+                    complete(List.of());
+                }
+            });
+        }
+
+        private void complete(List<String> links) {
+            synchronized (this) {
+                queued--;
+                try {
+                    for (String link : links) {
+                        if (robotsRules.isAllowed(link)) {
+                            frontier.push(link);
+                        }
+                    }
+                } catch (UncheckedIOException e) {
+                    log.error("indexingSite-> crawl frontier is not available: {}", e.getMessage());
+                    failed = true;
+                }
+            }
+            schedule();
+        }
+    }
+
+    /**
+     * Сохраняет итоговый статус сайта после обхода
+     * @param siteRepositories репозторий для взаимодейсвтия с таблицей сайтов
+     * @param statusIndexingProcess статус индексации, запущена или нет
+     * @param siteCrawl завершенный обход сайта
+     */
+    private static void finishIndexingSite(SiteRepositories siteRepositories, AtomicBoolean statusIndexingProcess, SiteCrawl siteCrawl) {
+        SiteEntity site = siteCrawl.site;
+        if (siteCrawl.failed || !statusIndexingProcess.get()) {
+            failureIndexingSiteByUser(siteRepositories, site);
+        } else {
+            log.info("indexingSite<- Indexing successful site:{}", site.getName());
+            site.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
+            site.setStatus(StatusSite.INDEXED.name());
+            siteRepositories.save(site);
+        }
+    }
+
+    /**
+     *
+     * @param siteRepositories репозторий для взаимодейсвтия с таблицей сайтов
+     * @param site индексируемый сайт
+     */
+    private static void failureIndexingSiteByUser(SiteRepositories siteRepositories, SiteEntity site) {
+        log.warn("indexingSite<- Indexing stopped by user, site:{}", site.getName());
+        site.setStatus(StatusSite.FAILED.name());
+        site.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
+        site.setLastError("Indexing stopped by user");
+        siteRepositories.save(site);
+    }
+}
@@ -0,0 +1,222 @@
+package searchengine.services.crawlingpages;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlSettings;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ограничение скорости запросов к каждому хосту: корзина токенов, скорость пополнения которой подстраивается по AIMD.
+ * Пока хост отвечает здорово, скорость растет на host-rate-increase запросов в секунду за ответ, при 429, 503,
+ * таймауте или росте задержки ответа падает в host-rate-decrease раз. Заголовок Retry-After останавливает
+ * запросы к хосту до указанного времени, а Crawl-delay из robots.txt ограничивает скорость сверху
+ * и оставляет хосту одно соединение без накопления токенов, чтобы запросы не уходили подряд.
+ * Быстрые хосты так обходятся быстрее, а хрупкие не перегружаются.
+ */
+@Slf4j
+@Component
+public class HostRateLimiter {
+    private static final Set<Integer> OVERLOAD_CODES = Set.of(408, 429, 503, 504);
+    /**
+     * Вес нового ответа в текущей задержке хоста
+     */
+    private static final double LATENCY_WEIGHT = 0.3;
+    /**
+     * Вес нового ответа в обычной задержке хоста, она меняется медленно и служит точкой отсчета
+     */
+    private static final double BASELINE_WEIGHT = 0.05;
+
+    private final CrawlSettings crawlSettings;
+    private final Map<String, HostRate> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Состояние хоста для статистики
+     * @param host            хост
+     * @param rate            текущая скорость в запросах в секунду
+     * @param maxRate         верхняя граница скорости с учетом Crawl-delay
+     * @param latencyMillis   текущая задержка ответа
+     * @param backoffs        сколько раз скорость снижалась
+     * @param retryAfterMillis сколько еще ждать по Retry-After
+     */
+    public record HostRateView(String host, double rate, double maxRate, double latencyMillis, long backoffs, long retryAfterMillis) {
+    }
+
+    /**
+     * Корзина токенов и задержки одного хоста. Доступ под блокировкой объекта
+     */
+    private static class HostRate {
+        private double rate;
+        private double maxRate;
+        private int burst;
+        private int connections;
+        private double tokens = 1;
+        private long refilledAt;
+        private long blockedUntil;
+        private double latency;
+        private double baseline;
+        private long decreasedAt;
+        private long backoffs;
+
+        private HostRate(double rate, double maxRate, int burst, int connections, long now) {
+            this.rate = Math.min(rate, maxRate);
+            this.maxRate = maxRate;
+            this.burst = burst;
+            this.connections = connections;
+            this.refilledAt = now;
+        }
+    }
+
+    public HostRateLimiter(CrawlSettings crawlSettings) {
+        this.crawlSettings = crawlSettings;
+    }
+
+    /**
+     * Берет токен на запрос к хосту
+     * @param host хост
+     * @param now  текущее время в миллисекундах
+     * @return 0, если запрос можно запускать, иначе сколько миллисекунд ждать следующего токена
+     */
+    public long tryAcquire(String host, long now) {
+        HostRate hostRate = getHostRate(host, now);
+        synchronized (hostRate) {
+            if (now < hostRate.blockedUntil) {
+                return hostRate.blockedUntil - now;
+            }
+            hostRate.tokens = Math.min(hostRate.burst,
+                    hostRate.tokens + Math.max(now - hostRate.refilledAt, 0) * hostRate.rate / 1000);
+            hostRate.refilledAt = now;
+            if (hostRate.tokens >= 1) {
+                hostRate.tokens -= 1;
+                return 0;
+            }
+            return Math.max((long) Math.ceil((1 - hostRate.tokens) * 1000 / hostRate.rate), 1);
+        }
+    }
+
+    /**
+     * Ограничивает скорость хоста по Crawl-delay из robots.txt
+     * @param host             хост
+     * @param crawlDelayMillis пауза между запросами или 0, если robots.txt ее не задает
+     */
+    public void setCrawlDelay(String host, long crawlDelayMillis) {
+        HostRate hostRate = getHostRate(host, System.currentTimeMillis());
+        synchronized (hostRate) {
+            hostRate.maxRate = crawlDelayMillis > 0
+                    ? Math.min(1000.0 / crawlDelayMillis, crawlSettings.getHostRateMax()) : crawlSettings.getHostRateMax();
+            hostRate.rate = Math.min(hostRate.rate, hostRate.maxRate);
+            hostRate.burst = crawlDelayMillis > 0 ? 1 : Math.max(crawlSettings.getHostBurst(), 1);
+            hostRate.connections = crawlDelayMillis > 0 ? 1 : Math.max(crawlSettings.getHostConnections(), 1);
+            hostRate.tokens = Math.min(hostRate.tokens, hostRate.burst);
+        }
+    }
+
+    /**
+     * @param host хост
+     * @return сколько запросов к хосту может выполняться одновременно, при Crawl-delay - один
+     */
+    public int getConnections(String host) {
+        HostRate hostRate = getHostRate(host, System.currentTimeMillis());
+        synchronized (hostRate) {
+            return hostRate.connections;
+        }
+    }
+
+    /**
+     * Подстраивает скорость хоста по результату запроса
+     * @param host             хост
+     * @param statusCode       http status code или код из Parsing.getStatusCode, если ответа не было
+     * @param latencyMillis    время запроса
+     * @param retryAfterMillis пауза из заголовка Retry-After или 0
+     */
+    public void onResponse(String host, int statusCode, long latencyMillis, long retryAfterMillis) {
+        long now = System.currentTimeMillis();
+        HostRate hostRate = getHostRate(host, now);
+        synchronized (hostRate) {
+            if (retryAfterMillis > 0) {
+                long blockedUntil = now + Math.min(retryAfterMillis, crawlSettings.getRetryAfterMaxMs());
+                if (blockedUntil > hostRate.blockedUntil) {
+                    hostRate.blockedUntil = blockedUntil;
+                    hostRate.refilledAt = blockedUntil;
+                    hostRate.tokens = 1;
+                }
+            }
+            if (OVERLOAD_CODES.contains(statusCode) || retryAfterMillis > 0) {
+                decrease(host, hostRate, now, "status " + statusCode);
+                return;
+            }
+            if (statusCode <= 0) {
+                return;
+            }
+            if (hostRate.baseline == 0) {
+                hostRate.latency = latencyMillis;
+                hostRate.baseline = latencyMillis;
+            } else {
+                hostRate.latency += LATENCY_WEIGHT * (latencyMillis - hostRate.latency);
+                hostRate.baseline += BASELINE_WEIGHT * (latencyMillis - hostRate.baseline);
+            }
+            if (hostRate.latency > hostRate.baseline * crawlSettings.getHostLatencyFactor()) {
+                decrease(host, hostRate, now, "latency " + Math.round(hostRate.latency) + " ms");
+            } else {
+                hostRate.rate = Math.min(hostRate.rate + crawlSettings.getHostRateIncrease(), hostRate.maxRate);
+            }
+        }
+    }
+
+    /**
+     * Снижает скорость не чаще одного раза за интервал между запросами, чтобы одна волна ошибок
+     * уже запущенных запросов не обрушила скорость до минимума
+     */
+    private void decrease(String host, HostRate hostRate, long now, String reason) {
+        long cooldown = Math.max((long) (1000 / hostRate.rate), (long) hostRate.latency);
+        if (now - hostRate.decreasedAt < cooldown) {
+            return;
+        }
+        hostRate.rate = Math.min(Math.max(hostRate.rate * crawlSettings.getHostRateDecrease(), crawlSettings.getHostRateMin()),
+                hostRate.maxRate);
+        hostRate.decreasedAt = now;
+        hostRate.backoffs++;
+        log.info("HostRateLimiter-> {} backs off to {} req/s, {}", host, String.format("%.2f", hostRate.rate), reason);
+    }
+
+    /**
+     * Состояние хоста хранится под нормализованным ключом: планировщик берет токены по хосту из конфига,
+     * а ответы приходят по хосту загруженного урла, который после редиректа может отличаться регистром или www
+     */
+    private HostRate getHostRate(String host, long now) {
+        return hosts.computeIfAbsent(hostKey(host),
+                key -> new HostRate(crawlSettings.getHostRateInitial(), crawlSettings.getHostRateMax(),
+                        Math.max(crawlSettings.getHostBurst(), 1), Math.max(crawlSettings.getHostConnections(), 1), now));
+    }
+
+    /**
+     * @param host хост
+     * @return хост в нижнем регистре без www
+     */
+    public static String hostKey(String host) {
+        String key = host.toLowerCase(Locale.ROOT);
+        return key.startsWith("www.") ? key.substring(4) : key;
+    }
+
+    /**
+     * @return текущие скорости хостов по алфавиту
+     */
+    public List<HostRateView> getRates() {
+        long now = System.currentTimeMillis();
+        List<HostRateView> rates = new ArrayList<>();
+        hosts.forEach((host, hostRate) -> {
+            synchronized (hostRate) {
+                rates.add(new HostRateView(host, hostRate.rate, hostRate.maxRate, hostRate.latency, hostRate.backoffs,
+                        Math.max(hostRate.blockedUntil - now, 0)));
+            }
+        });
+        rates.sort(Comparator.comparing(HostRateView::host));
+        return rates;
+    }
+}
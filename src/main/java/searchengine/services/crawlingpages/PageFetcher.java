@@ -0,0 +1,296 @@
+package searchengine.services.crawlingpages;
+
+import jakarta.annotation.PreDestroy;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConnectionSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Загрузка страниц общим java.net.http.HttpClient: соединения с хостом переиспользуются между запросами,
+ * ожидание ответа на виртуальном потоке не занимает поток ОС. Загруженные байты разбираются jsoup уже после ответа.
+ * Тело ответа читается не больше connection-settings.max-body-size байт, тело ответов с ошибкой и не HTML
+ * не загружается вовсе: решение принимается по заголовкам, до чтения тела. Весь запрос вместе с чтением тела
+ * ограничен одним таймаутом, как было у jsoup.
+ * Код, время ответа и Retry-After каждого запроса передаются в HostRateLimiter.
+ */
+@Component
+public class PageFetcher {
+    private static final Duration TIMEOUT = Duration.ofMillis(10000);
+    private static final String CHARSET = "charset=";
+
+    private final ConnectionSettings connectionSettings;
+    private final HostRateLimiter hostRateLimiter;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+
+    /**
+     * @param statusCode http status code ответа
+     * @param document   разобранный документ или null, если ответ не 2xx или не HTML
+     */
+    public record FetchedPage(int statusCode, Document document) {
+    }
+
+    /**
+     * @param statusCode http status code ответа
+     * @param body       содержимое файла или null, если ответ не 2xx
+     */
+    public record FetchedText(int statusCode, String body) {
+    }
+
+    public PageFetcher(ConnectionSettings connectionSettings, HostRateLimiter hostRateLimiter) {
+        this.connectionSettings = connectionSettings;
+        this.hostRateLimiter = hostRateLimiter;
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("http-client-", 0).factory());
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * @param url адрес страницы
+     * @return код ответа и документ страницы
+     * @throws IOException если страницу не удалось загрузить
+     */
+    public FetchedPage fetch(String url) throws IOException {
+        HttpResponse<byte[]> response = send(url, true, connectionSettings.getMaxBodySize());
+        int statusCode = response.statusCode();
+        String contentType = getContentType(response.headers());
+        if (statusCode >= 400) {
+            return new FetchedPage(statusCode, null);
+        }
+        if (!isPage(contentType)) {
+            return new FetchedPage(415, null);
+        }
+        Document document = Jsoup.parse(new ByteArrayInputStream(response.body()), getCharset(contentType),
+                response.uri().toString());
+        return new FetchedPage(statusCode, document);
+    }
+
+    /**
+     * Загружает служебный файл сайта, например robots.txt или sitemap. Файлы с расширением .gz распаковываются
+     * @param url      адрес файла
+     * @param maxBytes сколько байт файла читается, для .gz - и до, и после распаковки
+     * @return код ответа и содержимое в UTF-8
+     * @throws IOException если файл не удалось загрузить или распакованный файл больше maxBytes
+     */
+    public FetchedText fetchText(String url, int maxBytes) throws IOException {
+        HttpResponse<byte[]> response = send(url, false, maxBytes);
+        if (response.statusCode() >= 400) {
+            return new FetchedText(response.statusCode(), null);
+        }
+        byte[] body = response.body();
+        if (response.uri().getPath() != null && response.uri().getPath().endsWith(".gz")) {
+            try (GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = inputStream.readNBytes(maxBytes);
+                if (inputStream.read() >= 0) {
+                    throw new IOException("Unpacked file is larger than " + maxBytes + " bytes: " + url);
+                }
+            }
+        }
+        return new FetchedText(response.statusCode(), new String(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Выполняет GET-запрос и передает код, время ответа и Retry-After в HostRateLimiter
+     * @param pageOnly не читать тело, если ответ не HTML
+     * @param maxBytes сколько байт тела читается
+     */
+    private HttpResponse<byte[]> send(String url, boolean pageOnly, int maxBytes) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed url: " + url, e);
+        }
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(TIMEOUT)
+                .header("User-Agent", connectionSettings.getUserAgent())
+                .header("Referer", connectionSettings.getReferer())
+                .GET()
+                .build();
+        HttpResponse<byte[]> response;
+        long start = System.currentTimeMillis();
+        CompletableFuture<HttpResponse<byte[]>> future = httpClient.sendAsync(request, responseInfo -> {
+            boolean skipBody = responseInfo.statusCode() >= 400
+                    || (pageOnly && !isPage(getContentType(responseInfo.headers())));
+            return new LimitedBodySubscriber(skipBody ? 0 : maxBytes);
+        });
+        try {
+            response = getResponse(future, url);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Fetch interrupted: " + url);
+        } catch (IOException e) {
+            hostRateLimiter.onResponse(uri.getHost(), Parsing.getStatusCode(e), System.currentTimeMillis() - start, 0);
+            throw e;
+        }
+        hostRateLimiter.onResponse(uri.getHost(), response.statusCode(), System.currentTimeMillis() - start,
+                getRetryAfterMillis(response));
+        return response;
+    }
+
+    /**
+     * Ждет ответ вместе с телом не дольше TIMEOUT: таймаут запроса покрывает только ожидание заголовков,
+     * а сервер, который отдает тело по байту, иначе держал бы задачу обхода сколько угодно
+     */
+    private static HttpResponse<byte[]> getResponse(CompletableFuture<HttpResponse<byte[]>> future, String url)
+            throws IOException, InterruptedException {
+        try {
+            return future.get(TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new HttpTimeoutException("Response is not read in " + TIMEOUT.toMillis() + " ms: " + url);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Fetch failed: " + url, e.getCause());
+        }
+    }
+
+    private static String getContentType(HttpHeaders headers) {
+        return headers.firstValue("Content-Type").orElse("text/html").toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isPage(String contentType) {
+        return contentType.contains("html") || contentType.contains("xml");
+    }
+
+    /**
+     * Читает не больше maxBytes байт тела и отменяет загрузку остального. При maxBytes = 0 тело не читается,
+     * результат - null
+     */
+    private static class LimitedBodySubscriber implements HttpResponse.BodySubscriber<byte[]> {
+        private final long maxBytes;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final CompletableFuture<byte[]> body = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+
+        private LimitedBodySubscriber(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (maxBytes <= 0) {
+                subscription.cancel();
+                body.complete(null);
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> items) {
+            if (body.isDone()) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                int length = (int) Math.min(item.remaining(), maxBytes - buffer.size());
+                byte[] chunk = new byte[length];
+                item.get(chunk);
+                buffer.write(chunk, 0, length);
+            }
+            if (buffer.size() >= maxBytes) {
+                subscription.cancel();
+                body.complete(buffer.toByteArray());
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            body.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            body.complete(buffer.toByteArray());
+        }
+
+        @Override
+        public CompletionStage<byte[]> getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * @return пауза из заголовка Retry-After в секундах или в виде даты, 0 если заголовка нет
+     */
+    private static long getRetryAfterMillis(HttpResponse<?> response) {
+        Optional<String> header = response.headers().firstValue("Retry-After");
+        if (header.isEmpty()) {
+            return 0;
+        }
+        String retryAfter = header.get().trim();
+        try {
+            return Math.max(Long.parseLong(retryAfter), 0) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                Instant retryAt = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                return Math.max(Duration.between(Instant.now(), retryAt).toMillis(), 0);
+            } catch (DateTimeParseException ex) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return кодировка из Content-Type или null, тогда jsoup определяет ее по BOM и meta
+     */
+    private static String getCharset(String contentType) {
+        int index = contentType.indexOf(CHARSET);
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + CHARSET.length()).split(";")[0].trim().replace("\"", "");
+        try {
+            return Charset.isSupported(charset) ? charset : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        httpClient.close();
+        executor.shutdownNow();
+    }
+}
@@ -1,17 +1,13 @@
 package searchengine.services.crawlingpages;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
-import searchengine.config.ConnectionSettings;
 import searchengine.model.PageEntity;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentSkipListSet;
 
-import static java.lang.Thread.sleep;
-
 public class Parsing {
 
     public static boolean AllowedUrl(String link) {
@@ -35,14 +31,21 @@ public class Parsing {
      * Выполняет запрос к странице, получает список урлов, сохраняет результат запроса в PageEntity
      * @param url урл по которому выполняем запрос
      * @param pageEntity объект страницы в БД, куда сохраняем результат выполнения запроса
-     * @param connectionSettings параметры соеденения из конфига
+     * @param pageFetcher загрузка страниц общим http-клиентом
+     * @param storeHtml сохранять ли исходный HTML страницы
      * @return список полученных урлов со страницы
      */
-    public static ConcurrentSkipListSet<String> getLinks(String url, PageEntity pageEntity, ConnectionSettings connectionSettings) {
+    public static ConcurrentSkipListSet<String> getLinks(String url, PageEntity pageEntity, PageFetcher pageFetcher,
+                                                         boolean storeHtml) {
         ConcurrentSkipListSet<String> links = new ConcurrentSkipListSet<>();
         try {
-            sleep(500);
-            Document document = getJsoupDocument(url, connectionSettings);
+            PageFetcher.FetchedPage page = pageFetcher.fetch(url);
+            pageEntity.setCode(page.statusCode());
+            if (page.document() == null) {
+                pageEntity.setContent("");
+                return links;
+            }
+            Document document = page.document();
             Elements elements = document.select("body").select("a");
 
             for (Element element : elements) {
@@ -57,18 +60,25 @@ public class Parsing {
                     }
                 }
             }
-            pageEntity.setCode(document.connection().response().statusCode());
-            pageEntity.setContent(document.head() + String.valueOf(document.body()));
-        } catch (InterruptedException | IOException e) {
+            fillPageContent(pageEntity, document, storeHtml);
+        } catch (IOException e) {
             pageEntity.setCode(getStatusCode(e));
             pageEntity.setContent(e.toString());
         }
         return links;
     }
 
-    public static Document getJsoupDocument(String url, ConnectionSettings connectionSettings) throws IOException {
-        return Jsoup.connect(url).userAgent(connectionSettings.getUserAgent()).referrer(connectionSettings.getReferer())
-                .timeout(10000).get();
+    /**
+     * Извлекает из документа заголовок и видимый текст один раз при индексации, чтобы поиск не разбирал HTML
+     * @param pageEntity объект страницы в БД
+     * @param document полученный документ страницы
+     * @param storeHtml сохранять ли исходный HTML страницы, иначе content - пустая строка: колонка остается NOT NULL,
+     *                  ddl-auto: update не снимает это ограничение в существующих базах
+     */
+    public static void fillPageContent(PageEntity pageEntity, Document document, boolean storeHtml) {
+        pageEntity.setTitle(document.title());
+        pageEntity.setText(document.text());
+        pageEntity.setContent(storeHtml ? document.head() + String.valueOf(document.body()) : "");
     }
 
     /**
@@ -97,6 +107,8 @@ public class Parsing {
             statusCode = 500;
         } else if (message.contains("SSLHandshakeException")) {
             statusCode = 525;
+        } else if (message.contains("TimeoutException")) {
+            statusCode = 408;
         } else {
             statusCode = -1;
         }
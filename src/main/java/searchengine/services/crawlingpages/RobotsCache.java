@@ -0,0 +1,83 @@
+package searchengine.services.crawlingpages;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import searchengine.config.ConnectionSettings;
+import searchengine.config.CrawlSettings;
+import searchengine.services.cache.BoundedCache;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Кэш robots.txt по хостам. Файл загружается один раз на robots-ttl-seconds, Crawl-delay сразу передается
+ * в HostRateLimiter. Если robots.txt нет или он не загрузился, обход сайта ничем не ограничивается.
+ * Вызывается из задачи CrawlScheduler, поэтому загрузка robots.txt получает токен хоста так же, как загрузка страницы.
+ */
+@Slf4j
+@Component
+public class RobotsCache {
+    /**
+     * RFC 9309 требует разбирать не меньше 500 КиБ robots.txt, остальное можно отбросить
+     */
+    private static final int ROBOTS_MAX_BYTES = 512 * 1024;
+
+    private final PageFetcher pageFetcher;
+    private final HostRateLimiter hostRateLimiter;
+    private final ConnectionSettings connectionSettings;
+    private final CrawlSettings crawlSettings;
+    private final BoundedCache<String, Entry> cache;
+
+    /**
+     * @param rules     правила для нашего агента
+     * @param expiresAt когда robots.txt нужно загрузить заново
+     */
+    private record Entry(RobotsRules rules, long expiresAt) {
+    }
+
+    public RobotsCache(PageFetcher pageFetcher, HostRateLimiter hostRateLimiter, ConnectionSettings connectionSettings,
+                       CrawlSettings crawlSettings) {
+        this.pageFetcher = pageFetcher;
+        this.hostRateLimiter = hostRateLimiter;
+        this.connectionSettings = connectionSettings;
+        this.crawlSettings = crawlSettings;
+        this.cache = new BoundedCache<>("robots", crawlSettings.getRobotsCacheSize());
+    }
+
+    /**
+     * @param url адрес любой страницы хоста
+     * @return правила robots.txt хоста
+     */
+    public RobotsRules getRules(String url) {
+        URI uri = URI.create(url);
+        String origin = uri.getScheme() + "://" + uri.getRawAuthority();
+        Entry entry = cache.get(origin);
+        if (entry == null || entry.expiresAt() < System.currentTimeMillis()) {
+            entry = new Entry(load(origin), System.currentTimeMillis() + crawlSettings.getRobotsTtlSeconds() * 1000);
+            cache.put(origin, entry);
+            hostRateLimiter.setCrawlDelay(uri.getHost(), entry.rules().getCrawlDelayMillis());
+        }
+        return entry.rules();
+    }
+
+    private RobotsRules load(String origin) {
+        try {
+            PageFetcher.FetchedText robots = pageFetcher.fetchText(origin + "/robots.txt", ROBOTS_MAX_BYTES);
+            if (robots.body() == null) {
+                log.info("RobotsCache-> {}/robots.txt not found, status {}", origin, robots.statusCode());
+                return RobotsRules.ALLOW_ALL;
+            }
+            RobotsRules rules = RobotsRules.parse(robots.body(), connectionSettings.getUserAgent());
+            log.info("RobotsCache-> {}/robots.txt loaded, crawl delay {} ms, sitemaps {}", origin,
+                    rules.getCrawlDelayMillis(), rules.getSitemaps().size());
+            return rules;
+        } catch (IOException e) {
+            log.warn("RobotsCache-> {}/robots.txt is not available: {}", origin, e.getMessage());
+            return RobotsRules.ALLOW_ALL;
+        }
+    }
+
+    public BoundedCache<?, ?> getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,169 @@
+package searchengine.services.crawlingpages;
+
+import lombok.Getter;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Правила robots.txt для нашего агента: Allow и Disallow с * и $, Crawl-delay и адреса Sitemap.
+ * Правило выбирается по самому длинному совпавшему шаблону, при равной длине побеждает Allow.
+ * Группа выбирается по самому длинному имени агента, которое входит в наш User-Agent, иначе берется группа *.
+ */
+public class RobotsRules {
+    public static final RobotsRules ALLOW_ALL = new RobotsRules(List.of(), 0, List.of());
+
+    private final List<Rule> rules;
+    @Getter
+    private final long crawlDelayMillis;
+    @Getter
+    private final List<String> sitemaps;
+
+    /**
+     * @param length длина шаблона, по ней выбирается правило
+     * @param allow  Allow или Disallow
+     * @param regex  шаблон пути
+     */
+    private record Rule(int length, boolean allow, Pattern regex) {
+    }
+
+    /**
+     * Группа правил для одного или нескольких подряд указанных агентов
+     */
+    private static class Group {
+        private final List<String> agents = new ArrayList<>();
+        private final List<Rule> rules = new ArrayList<>();
+        private double crawlDelaySeconds;
+    }
+
+    private RobotsRules(List<Rule> rules, long crawlDelayMillis, List<String> sitemaps) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+        this.sitemaps = sitemaps;
+    }
+
+    /**
+     * @param content   содержимое robots.txt
+     * @param userAgent наш User-Agent
+     * @return правила для нашего агента
+     */
+    public static RobotsRules parse(String content, String userAgent) {
+        List<Group> groups = new ArrayList<>();
+        List<String> sitemaps = new ArrayList<>();
+        Group group = null;
+        boolean agentLine = false;
+        for (String line : content.split("\r\n|\r|\n")) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String key = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (key.equals("user-agent")) {
+                if (!agentLine) {
+                    group = new Group();
+                    groups.add(group);
+                }
+                group.agents.add(value.toLowerCase(Locale.ROOT));
+                agentLine = true;
+                continue;
+            }
+            agentLine = false;
+            if (key.equals("sitemap")) {
+                if (!value.isEmpty()) {
+                    sitemaps.add(value);
+                }
+            } else if (group != null && (key.equals("allow") || key.equals("disallow")) && !value.isEmpty()) {
+                group.rules.add(new Rule(value.length(), key.equals("allow"), toRegex(value)));
+            } else if (group != null && key.equals("crawl-delay")) {
+                try {
+                    group.crawlDelaySeconds = Math.max(Double.parseDouble(value), 0);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        List<Group> selected = selectGroups(groups, userAgent.toLowerCase(Locale.ROOT));
+        List<Rule> rules = new ArrayList<>();
+        double crawlDelaySeconds = 0;
+        for (Group selectedGroup : selected) {
+            rules.addAll(selectedGroup.rules);
+            crawlDelaySeconds = Math.max(crawlDelaySeconds, selectedGroup.crawlDelaySeconds);
+        }
+        rules.sort(Comparator.comparingInt(Rule::length).reversed().thenComparing(Rule::allow, Comparator.reverseOrder()));
+        return new RobotsRules(rules, Math.round(crawlDelaySeconds * 1000), List.copyOf(sitemaps));
+    }
+
+    /**
+     * @return группы с самым длинным подходящим нам именем агента или группы *
+     */
+    private static List<Group> selectGroups(List<Group> groups, String userAgent) {
+        String bestAgent = null;
+        for (Group group : groups) {
+            for (String agent : group.agents) {
+                if (!agent.equals("*") && userAgent.contains(agent)
+                        && (bestAgent == null || agent.length() > bestAgent.length())) {
+                    bestAgent = agent;
+                }
+            }
+        }
+        String selectedAgent = bestAgent == null ? "*" : bestAgent;
+        return groups.stream().filter(group -> group.agents.contains(selectedAgent)).toList();
+    }
+
+    /**
+     * Шаблон пути robots.txt в регулярное выражение: * - любые символы, $ в конце - конец пути
+     */
+    private static Pattern toRegex(String pattern) {
+        boolean anchored = pattern.endsWith("$");
+        String path = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+        StringBuilder regex = new StringBuilder();
+        for (String part : path.split("\\*", -1)) {
+            if (!regex.isEmpty()) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        if (anchored) {
+            regex.append('$');
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * @param url адрес страницы
+     * @return можно ли обходить страницу
+     */
+    public boolean isAllowed(String url) {
+        if (rules.isEmpty()) {
+            return true;
+        }
+        String path;
+        try {
+            URI uri = new URI(url);
+            path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            if (uri.getRawQuery() != null) {
+                path += "?" + uri.getRawQuery();
+            }
+        } catch (URISyntaxException e) {
+            return true;
+        }
+        if (path.equals("/robots.txt")) {
+            return true;
+        }
+        for (Rule rule : rules) {
+            if (rule.regex().matcher(path).lookingAt()) {
+                return rule.allow();
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+package searchengine.services.crawlingpages;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlSettings;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Читает sitemap.xml и индексы sitemap, чтобы сразу положить все известные страницы сайта в очередь обхода,
+ * не дожидаясь, пока их найдут по ссылкам. За вызов читается один файл: CrawlingPages загружает каждый файл
+ * отдельной задачей CrawlScheduler, поэтому загрузки соблюдают скорость хоста и не держат рабочий поток в ожидании.
+ * Размер файла ограничен sitemap-max-bytes. Как требует протокол sitemap, читаются только sitemap на хосте сайта,
+ * поэтому сайт не может направить обходчик на чужие или внутренние адреса.
+ */
+@Slf4j
+@Component
+public class SitemapReader {
+    private final PageFetcher pageFetcher;
+    private final CrawlSettings crawlSettings;
+
+    /**
+     * @param url     адрес страницы
+     * @param lastmod дата изменения страницы из sitemap или null
+     */
+    public record SitemapUrl(String url, Instant lastmod) {
+    }
+
+    /**
+     * @param urls     страницы из файла, сначала недавно измененные
+     * @param sitemaps вложенные sitemap, если файл - индекс sitemap
+     */
+    public record SitemapFile(List<SitemapUrl> urls, List<String> sitemaps) {
+        private static final SitemapFile EMPTY = new SitemapFile(List.of(), List.of());
+    }
+
+    public SitemapReader(PageFetcher pageFetcher, CrawlSettings crawlSettings) {
+        this.pageFetcher = pageFetcher;
+        this.crawlSettings = crawlSettings;
+    }
+
+    /**
+     * @param sitemap адрес sitemap из robots.txt, из индекса sitemap или адрес sitemap.xml по умолчанию
+     * @param host    хост сайта
+     * @return страницы и вложенные sitemap из файла, пустой результат, если файл не загрузился
+     */
+    public SitemapFile read(String sitemap, String host) {
+        Document document = load(sitemap, host);
+        if (document == null) {
+            return SitemapFile.EMPTY;
+        }
+        List<String> sitemaps = new ArrayList<>();
+        for (Element loc : document.select("sitemapindex > sitemap > loc")) {
+            sitemaps.add(loc.text().trim());
+        }
+        List<SitemapUrl> urls = new ArrayList<>();
+        for (Element url : document.select("urlset > url")) {
+            Element loc = url.selectFirst("loc");
+            if (loc == null || loc.text().isBlank()) {
+                continue;
+            }
+            Element lastmod = url.selectFirst("lastmod");
+            urls.add(new SitemapUrl(loc.text().trim(), lastmod == null ? null : parseLastmod(lastmod.text().trim())));
+            if (urls.size() >= crawlSettings.getSitemapMaxUrls()) {
+                break;
+            }
+        }
+        log.info("SitemapReader-> {} urls and {} sitemaps from {}", urls.size(), sitemaps.size(), sitemap);
+        urls.sort(Comparator.comparing(SitemapUrl::lastmod, Comparator.nullsLast(Comparator.reverseOrder())));
+        return new SitemapFile(urls, sitemaps);
+    }
+
+    /**
+     * @return разобранный sitemap или null, если он не загрузился
+     */
+    private Document load(String sitemap, String siteHost) {
+        try {
+            String host = URI.create(sitemap).getHost();
+            if (host == null) {
+                log.warn("SitemapReader-> malformed sitemap url: {}", sitemap);
+                return null;
+            }
+            if (!HostRateLimiter.hostKey(host).equals(HostRateLimiter.hostKey(siteHost))) {
+                log.warn("SitemapReader-> sitemap on another host skipped: {}", sitemap);
+                return null;
+            }
+            PageFetcher.FetchedText text = pageFetcher.fetchText(sitemap, crawlSettings.getSitemapMaxBytes());
+            if (text.body() == null) {
+                log.info("SitemapReader-> {} not found, status {}", sitemap, text.statusCode());
+                return null;
+            }
+            return Jsoup.parse(text.body(), sitemap, Parser.xmlParser());
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("SitemapReader-> {} is not available: {}", sitemap, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param lastmod дата в формате W3C Datetime, полная или только день
+     * @return момент изменения или null, если дата не разбирается
+     */
+    private static Instant parseLastmod(String lastmod) {
+        try {
+            if (lastmod.length() == 10) {
+                return LocalDate.parse(lastmod).atStartOfDay(ZoneOffset.UTC).toInstant();
+            }
+            return OffsetDateTime.parse(lastmod).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
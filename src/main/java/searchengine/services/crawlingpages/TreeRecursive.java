@@ -1,18 +1,17 @@
 package searchengine.services.crawlingpages;
 
 import lombok.extern.slf4j.Slf4j;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.safety.Safelist;
 import org.springframework.transaction.annotation.Transactional;
-import searchengine.config.ConnectionSettings;
+import searchengine.config.CrawlSettings;
 import searchengine.model.*;
 import searchengine.repositories.IndexRepositories;
 import searchengine.repositories.LemmaRepositories;
 import searchengine.repositories.PageRepositories;
 import searchengine.repositories.SiteRepositories;
-import searchengine.services.LemmaFinder;
+import searchengine.services.Lemmatizer;
 import searchengine.services.interfaces.PageIndexerService;
+import searchengine.services.searchindex.InvertedIndex;
+import searchengine.services.searchindex.TokenPositions;
 
 import java.io.IOException;
 import java.sql.Timestamp;
@@ -24,70 +23,84 @@ import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Обход одной страницы сайта: загрузка, сохранение, индексация и поиск новых ссылок.
+ * Новые ссылки не обходятся здесь же, а возвращаются, чтобы CrawlScheduler поставил их в очередь хоста.
+ */
 @Slf4j
-public class TreeRecursive extends RecursiveTask<LinkTree> {
+public class TreeRecursive {
     private final SiteEntity site;
-    private final LinkTree linkTree;
-    private final ConcurrentHashMap<String, String> visitedPages;
+    private final String url;
+    private final UrlSeenSet seenUrls;
     private final SiteRepositories siteRepositories;
     private final PageRepositories pageRepositories;
     private final LemmaRepositories lemmaRepositories;
     private final IndexRepositories indexRepositories;
     private final PageIndexerService pageIndexerService;
+    private final InvertedIndex invertedIndex;
+    private final Lemmatizer lemmatizer;
     private final AtomicBoolean statusIndexingProcess;
 
-    private final ConnectionSettings connectionSettings;
+    private final PageFetcher pageFetcher;
+    private final CrawlSettings crawlSettings;
 
     /**
      *
      * @param site индексируемый сайт
-     * @param linkTree связь вложенных страниц
-     * @param visitedPages посещеные страницы
+     * @param url адрес страницы
+     * @param seenUrls найденные урлы сайта в каноническом виде
      * @param siteRepositories репозторий для взаимодейсвтия с таблицей сайтов
      * @param pageRepositories репозторий для взаимодейсвтия с таблицей страниц
      * @param statusIndexingProcess статус индексации, запущена или нет
-     * @param connectionSettings параметры соеденения из конфига
+     * @param pageFetcher загрузка страниц общим http-клиентом
+     * @param crawlSettings параметры обхода сайтов из конфига
      * @param lemmaRepositories репозторий для взаимодейсвтия с таблицей лемм
      * @param indexRepositories репозторий для взаимодейсвтия с таблицей индексов
      * @param pageIndexerService сервис для работы с индексацией страниц
+     * @param invertedIndex обратный индекс в памяти
+     * @param lemmatizer общие экземпляры LemmaFinder
      */
-    public TreeRecursive(SiteEntity site, LinkTree linkTree, ConcurrentHashMap<String, String> visitedPages,
+    public TreeRecursive(SiteEntity site, String url, UrlSeenSet seenUrls,
                          SiteRepositories siteRepositories, PageRepositories pageRepositories, AtomicBoolean statusIndexingProcess,
-                         ConnectionSettings connectionSettings, LemmaRepositories lemmaRepositories,
-                         IndexRepositories indexRepositories, PageIndexerService pageIndexerService) {
+                         PageFetcher pageFetcher, CrawlSettings crawlSettings, LemmaRepositories lemmaRepositories,
+                         IndexRepositories indexRepositories, PageIndexerService pageIndexerService, InvertedIndex invertedIndex,
+                         Lemmatizer lemmatizer) {
         this.site = site;
-        this.linkTree = linkTree;
-        this.visitedPages = visitedPages;
+        this.url = url;
+        this.seenUrls = seenUrls;
         this.siteRepositories = siteRepositories;
         this.pageRepositories = pageRepositories;
         this.lemmaRepositories = lemmaRepositories;
         this.indexRepositories = indexRepositories;
         this.statusIndexingProcess = statusIndexingProcess;
-        this.connectionSettings = connectionSettings;
+        this.pageFetcher = pageFetcher;
+        this.crawlSettings = crawlSettings;
         this.pageIndexerService =pageIndexerService;
+        this.invertedIndex = invertedIndex;
+        this.lemmatizer = lemmatizer;
     }
 
-    @Override
+    /**
+     * @return новые ссылки со страницы, которые нужно обойти
+     * @throws RuntimeException если индексация остановлена пользователем
+     */
     @Transactional
-    protected LinkTree compute() throws RuntimeException {
+    public List<String> compute() throws RuntimeException {
         log.info("TreeRecursive.compute -> start");
         if (!statusIndexingProcess.get()) {
-            log.warn("TreeRecursive.compute -> Indexing stopped by user: {}", linkTree.getUrl());
+            log.warn("TreeRecursive.compute -> Indexing stopped by user: {}", url);
             throw new RuntimeException("Indexing stopped by user");
-        } else if (visitedPages.get(linkTree.getUrl()) != null) {
-            log.info("TreeRecursive.compute -> Already visited url: {}", linkTree.getUrl());
-            return linkTree;
         }
         PageEntity pageEntity = new PageEntity();
-        pageEntity.setPath(linkTree.getUrl().substring(linkTree.getUrl().indexOf(".ru") + 3));
+        pageEntity.setPath(url.substring(url.indexOf(".ru") + 3));
         pageEntity.setSite(site);
 
-        ConcurrentSkipListSet<String> links = Parsing.getLinks(linkTree.getUrl(), pageEntity, connectionSettings);
+        ConcurrentSkipListSet<String> links = Parsing.getLinks(url, pageEntity, pageFetcher, crawlSettings.isStoreHtml());
 
+        List<String> newLinks = new ArrayList<>();
         for (String link : links) {
-            if (!visitedPages.containsValue(link) && !visitedPages.containsKey(link)) {
-                visitedPages.put(linkTree.getUrl(), link);
-                linkTree.addLink(new LinkTree(link));
+            if (seenUrls.add(link)) {
+                newLinks.add(link);
             }
         }
 
@@ -104,16 +117,7 @@ public class TreeRecursive extends RecursiveTask<LinkTree> {
         site.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
         siteRepositories.save(site);
 
-        List<TreeRecursive> newTask = new ArrayList<>();
-        for (LinkTree l : linkTree.getLinkChildren()) {
-            TreeRecursive rec = new TreeRecursive(site, l, visitedPages, siteRepositories, pageRepositories, statusIndexingProcess, connectionSettings, lemmaRepositories, indexRepositories, pageIndexerService);
-            rec.fork();
-            newTask.add(rec);
-        }
-        for (TreeRecursive task : newTask) {
-            task.join();
-        }
-        return linkTree;
+        return newLinks;
     }
 
     /**
@@ -122,12 +126,11 @@ public class TreeRecursive extends RecursiveTask<LinkTree> {
      * @throws IOException
      */
     private void saveLemmaAndIndexEntity(PageEntity pageEntity) throws IOException {
-        LemmaFinder lemmaFinderRus = LemmaFinder.getRusInstance();
-        LemmaFinder lemmaFinderEng = LemmaFinder.getEngInstance();
         if (pageEntity.getCode() == 200) {
-            String text =Jsoup.clean(pageEntity.getContent(), Safelist.none());
-            Map<String, Integer> lemmaCollect = lemmaFinderRus.collectRusLemmas(text);
-            lemmaCollect.putAll(lemmaFinderEng.collectEngLemmas(text));
+            Map<String, TokenPositions> lemmaPositions = crawlSettings.isStorePositions()
+                    ? lemmatizer.collectLemmaPositions(pageEntity.getText()) : Map.of();
+            Map<String, Integer> lemmaCollect = lemmaPositions.isEmpty()
+                    ? lemmatizer.collectLemmas(pageEntity.getText()) : TokenPositions.toCounts(lemmaPositions);
             Set<String> lemmas = lemmaCollect.keySet();
 
             for (String lemma : lemmas) {
@@ -138,13 +141,14 @@ public class TreeRecursive extends RecursiveTask<LinkTree> {
                     log.error("Don`t save lemmaEntity:{}", e);
                 }
 
-                IndexEntity indexEntity = createIndexEntity(pageEntity, lemma, lemmaEntity, lemmaCollect);
+                IndexEntity indexEntity = createIndexEntity(pageEntity, lemma, lemmaEntity, lemmaCollect, lemmaPositions.get(lemma));
                 try {
                     indexRepositories.save(indexEntity);
                 } catch (Exception e){
                     log.error("Don`t save indexEntity:{}", e);
                 }
             }
+            invertedIndex.addPage(pageEntity.getSite().getId(), pageEntity.getId(), lemmaCollect);
         }
     }
 
@@ -154,15 +158,18 @@ public class TreeRecursive extends RecursiveTask<LinkTree> {
      * @param lemma лемма с индексируемой страницы
      * @param lemmaEntity объект леммы из БД
      * @param lemmaCollect Map лемм и их количества для индексируемой страницы
+     * @param positions позиции леммы на странице или null, если позиции не сохраняются
      * @return объект связки леммы и страницы для сохраннения в БД
      */
-    private IndexEntity createIndexEntity(PageEntity pageEntity, String lemma, LemmaEntity lemmaEntity, Map<String, Integer> lemmaCollect) {
+    private IndexEntity createIndexEntity(PageEntity pageEntity, String lemma, LemmaEntity lemmaEntity, Map<String, Integer> lemmaCollect,
+                                          TokenPositions positions) {
         IndexEntity indexEntity = indexRepositories.findByPageIdLemmaId(pageEntity.getSite().getId(), lemmaEntity.getId());
         if(indexEntity == null){
             indexEntity = new IndexEntity();
             indexEntity.setPage(pageEntity);
             indexEntity.setLemma(lemmaEntity);
             indexEntity.setRank(lemmaCollect.get(lemma));
+            indexEntity.setPositions(positions == null ? null : positions.encode());
         }else {
             indexEntity.setRank(indexEntity.getRank()+1);
         }
@@ -199,14 +206,17 @@ public class TreeRecursive extends RecursiveTask<LinkTree> {
         indexPage.setSite(site);
 
         try {
-            Document doc = Parsing.getJsoupDocument(site.getUrl()+path, connectionSettings);
-            indexPage.setContent(doc.head() + String.valueOf(doc.body()));
-            indexPage.setCode(doc.connection().response().statusCode());
-            if (indexPage.getContent() == null || indexPage.getContent().isEmpty() || indexPage.getContent().isBlank()) {
+            PageFetcher.FetchedPage page = pageFetcher.fetch(site.getUrl() + path);
+            indexPage.setCode(page.statusCode());
+            if (page.document() == null) {
+                throw new IOException("Status=" + page.statusCode() + ", page:" + path);
+            }
+            Parsing.fillPageContent(indexPage, page.document(), crawlSettings.isStoreHtml());
+            if (indexPage.getText() == null || indexPage.getText().isBlank()) {
                 throw new Exception("Content of site id:" + indexPage.getSite().getId() + ", page:" + indexPage.getPath() + " is null or empty");
             }
         } catch (Exception ex) {
-            indexPage.setCode(Parsing.getStatusCode(ex));
+            indexPage.setCode(indexPage.getCode() >= 400 ? indexPage.getCode() : Parsing.getStatusCode(ex));
             SiteEntity sitePage = siteRepositories.findById(site.getId()).orElseThrow();
             sitePage.setStatusTime(Timestamp.valueOf(LocalDateTime.now()));
             siteRepositories.save(sitePage);
@@ -220,12 +230,14 @@ public class TreeRecursive extends RecursiveTask<LinkTree> {
         PageEntity pageToRefresh = pageRepositories.findBySiteIdAndPage( sitePage.getId(), path);
         if (pageToRefresh != null) {
             pageToRefresh.setCode(indexPage.getCode());
+            pageToRefresh.setTitle(indexPage.getTitle());
+            pageToRefresh.setText(indexPage.getText());
             pageToRefresh.setContent(indexPage.getContent());
             pageRepositories.save(pageToRefresh);
-            pageIndexerService.refreshIndex(indexPage.getContent(), pageToRefresh);
+            pageIndexerService.refreshIndex(indexPage.getText(), pageToRefresh);
         } else {
             pageRepositories.save(indexPage);
-            pageIndexerService.refreshIndex(indexPage.getContent(), indexPage);
+            pageIndexerService.refreshIndex(indexPage.getText(), indexPage);
         }
 
         sitePage.setStatus(StatusSite.INDEXED.name());
@@ -0,0 +1,184 @@
+package searchengine.services.crawlingpages;
+
+import lombok.extern.slf4j.Slf4j;
+import searchengine.config.CrawlSettings;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Множество уже найденных урлов сайта. Урлы сравниваются в каноническом виде, поэтому ссылки, которые отличаются
+ * регистром схемы и хоста, www, портом по умолчанию, якорем, слешем в конце или метками рекламных кампаний,
+ * считаются одной страницей. Проверка и добавление - одна операция за O(1).
+ * Для очень больших сайтов можно включить второй уровень - фильтр Блума: после seen-exact-limit точных записей
+ * новые урлы попадают только в него, памяти нужно в разы меньше, но небольшая доля новых страниц будет пропущена.
+ * Память ограничена при любых настройках: точных записей не больше seen-exact-limit, в фильтре Блума - не больше
+ * seen-bloom-capacity урлов, дальше ложных срабатываний стало бы слишком много. Когда место кончилось,
+ * новые урлы сайта больше не обходятся.
+ */
+@Slf4j
+public class UrlSeenSet {
+    private static final Set<String> TRACKING_PARAMETERS = Set.of("gclid", "fbclid", "yclid", "ymclid", "_openstat");
+    private static final String TRACKING_PREFIX = "utm_";
+
+    private final Set<String> exact = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger exactSize = new AtomicInteger();
+    private final int exactLimit;
+    private final BloomFilter bloomFilter;
+    private final AtomicInteger bloomSize = new AtomicInteger();
+    private final int bloomCapacity;
+    private final AtomicBoolean full = new AtomicBoolean();
+
+    public UrlSeenSet(CrawlSettings crawlSettings) {
+        this.exactLimit = crawlSettings.getSeenExactLimit();
+        this.bloomFilter = crawlSettings.isSeenBloomFilter()
+                ? new BloomFilter(crawlSettings.getSeenBloomCapacity(), crawlSettings.getSeenBloomFalsePositive()) : null;
+        this.bloomCapacity = crawlSettings.isSeenBloomFilter() ? crawlSettings.getSeenBloomCapacity() : 0;
+    }
+
+    /**
+     * @param url найденный урл
+     * @return true, если урл встретился впервые и его нужно обойти, false также когда место для урлов кончилось
+     */
+    public boolean add(String url) {
+        String canonical = canonicalize(url);
+        if (exact.contains(canonical)) {
+            return false;
+        }
+        if (exactSize.incrementAndGet() <= exactLimit) {
+            if (exact.add(canonical)) {
+                return true;
+            }
+            exactSize.decrementAndGet();
+            return false;
+        }
+        exactSize.decrementAndGet();
+        if (bloomSize.incrementAndGet() <= bloomCapacity) {
+            if (bloomFilter.add(canonical)) {
+                return true;
+            }
+            bloomSize.decrementAndGet();
+            return false;
+        }
+        bloomSize.decrementAndGet();
+        if (full.compareAndSet(false, true)) {
+            log.warn("UrlSeenSet-> url limit reached: exact {}, bloom filter {}, new urls are skipped",
+                    exactLimit, bloomCapacity);
+        }
+        return false;
+    }
+
+    /**
+     * Канонический вид урла для сравнения: схема и хост в нижнем регистре, без www, порта по умолчанию,
+     * якоря, слеша в конце пути и меток рекламных кампаний в параметрах
+     * @param url урл
+     * @return канонический урл или исходная строка, если урл не разбирается
+     */
+    public static String canonicalize(String url) {
+        URI uri;
+        try {
+            uri = new URI(url.trim());
+        } catch (URISyntaxException e) {
+            return url;
+        }
+        if (uri.getHost() == null || uri.getScheme() == null) {
+            return url;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (host.startsWith("www.")) {
+            host = host.substring(4);
+        }
+        int port = uri.getPort();
+        boolean defaultPort = port == -1 || (scheme.equals("http") && port == 80) || (scheme.equals("https") && port == 443);
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        StringBuilder canonical = new StringBuilder(url.length()).append(scheme).append("://").append(host);
+        if (!defaultPort) {
+            canonical.append(':').append(port);
+        }
+        canonical.append(path.isEmpty() ? "/" : path);
+        String query = removeTrackingParameters(uri.getRawQuery());
+        if (!query.isEmpty()) {
+            canonical.append('?').append(query);
+        }
+        return canonical.toString();
+    }
+
+    private static String removeTrackingParameters(String query) {
+        if (query == null || query.isEmpty()) {
+            return "";
+        }
+        StringJoiner result = new StringJoiner("&");
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = (equals < 0 ? parameter : parameter.substring(0, equals)).toLowerCase(Locale.ROOT);
+            if (!name.isEmpty() && !name.startsWith(TRACKING_PREFIX) && !TRACKING_PARAMETERS.contains(name)) {
+                result.add(parameter);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Фильтр Блума на AtomicLongArray, потокобезопасен без блокировок.
+     * Позиции бит получаются из двух половин 64-битного хэша (схема Кирша - Митценмахера)
+     */
+    private static class BloomFilter {
+        private final AtomicLongArray words;
+        private final long bitCount;
+        private final int hashCount;
+
+        /**
+         * @param capacity      ожидаемое количество урлов
+         * @param falsePositive допустимая доля ложных срабатываний
+         */
+        private BloomFilter(int capacity, double falsePositive) {
+            long bits = (long) Math.ceil(-Math.max(capacity, 1) * Math.log(falsePositive) / (Math.log(2) * Math.log(2)));
+            this.words = new AtomicLongArray((int) Math.max((bits + 63) >>> 6, 1));
+            this.bitCount = (long) words.length() << 6;
+            this.hashCount = Math.max((int) Math.round((double) bitCount / Math.max(capacity, 1) * Math.log(2)), 1);
+        }
+
+        /**
+         * @return true, если хотя бы один бит был не установлен, то есть значения в фильтре еще не было
+         */
+        private boolean add(String value) {
+            long hash = hash(value);
+            int first = (int) hash;
+            int second = (int) (hash >>> 32);
+            boolean added = false;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Math.floorMod(first + (long) i * second, bitCount);
+                long mask = 1L << bit;
+                long previous = words.getAndAccumulate((int) (bit >>> 6), mask, (word, m) -> word | m);
+                added |= (previous & mask) == 0;
+            }
+            return added;
+        }
+
+        /**
+         * 64-битный FNV-1a по символам строки с финальным перемешиванием
+         */
+        private static long hash(String value) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
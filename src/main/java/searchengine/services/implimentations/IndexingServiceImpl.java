@@ -3,7 +3,7 @@ package searchengine.services.implimentations;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import searchengine.config.ConnectionSettings;
+import searchengine.config.CrawlSettings;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.IndexingResponse;
@@ -12,17 +12,22 @@ import searchengine.repositories.IndexRepositories;
 import searchengine.repositories.LemmaRepositories;
 import searchengine.repositories.PageRepositories;
 import searchengine.repositories.SiteRepositories;
-import searchengine.services.crawlingpages.ForkJoinPoolCrawlingPages;
-import searchengine.services.crawlingpages.LinkTree;
+import searchengine.services.Lemmatizer;
+import searchengine.services.crawlingpages.CrawlScheduler;
+import searchengine.services.crawlingpages.CrawlingPages;
+import searchengine.services.crawlingpages.PageFetcher;
+import searchengine.services.crawlingpages.RobotsCache;
+import searchengine.services.crawlingpages.SitemapReader;
 import searchengine.services.crawlingpages.TreeRecursive;
+import searchengine.services.crawlingpages.UrlSeenSet;
 import searchengine.services.interfaces.IndexingService;
 import searchengine.services.interfaces.PageIndexerService;
+import searchengine.services.searchindex.InvertedIndex;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
@@ -30,12 +35,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Slf4j
 public class IndexingServiceImpl implements IndexingService {
     private final SitesList sitesList;
-    private final ConnectionSettings connectionSettings;
+    private final PageFetcher pageFetcher;
+    private final CrawlSettings crawlSettings;
     private final PageRepositories pageRepositories;
     private final SiteRepositories siteRepositories;
     private final LemmaRepositories lemmaRepositories;
     private final IndexRepositories indexRepositories;
     private final PageIndexerService pageIndexerService;
+    private final InvertedIndex invertedIndex;
+    private final Lemmatizer lemmatizer;
+    private final CrawlScheduler crawlScheduler;
+    private final RobotsCache robotsCache;
+    private final SitemapReader sitemapReader;
     private AtomicBoolean statusIndexingProcess;
 
     @Override
@@ -45,7 +56,7 @@ public class IndexingServiceImpl implements IndexingService {
         IndexingResponse response = new IndexingResponse();
         try {
             deleteAllRecord();
-            ForkJoinPoolCrawlingPages.crawlingPages(addNewSiteInDb(), siteRepositories, pageRepositories, this.statusIndexingProcess, connectionSettings, lemmaRepositories, indexRepositories, pageIndexerService);
+            CrawlingPages.crawlingPages(addNewSiteInDb(), siteRepositories, pageRepositories, this.statusIndexingProcess, pageFetcher, crawlSettings, lemmaRepositories, indexRepositories, pageIndexerService, invertedIndex, lemmatizer, crawlScheduler, robotsCache, sitemapReader);
             response.setResult(this.statusIndexingProcess.get());
         } catch (Exception e) {
             log.error("startIndexing<- Process stopped, because {}", e.getMessage());
@@ -92,9 +103,9 @@ public class IndexingServiceImpl implements IndexingService {
 
         statusIndexingProcess = new AtomicBoolean(true);
         try {
-            TreeRecursive treeRecursive = new TreeRecursive(siteEntity, new LinkTree(url), new ConcurrentHashMap<>(),
-                    siteRepositories, pageRepositories, statusIndexingProcess, connectionSettings, lemmaRepositories,
-                    indexRepositories, pageIndexerService);
+            TreeRecursive treeRecursive = new TreeRecursive(siteEntity, url, new UrlSeenSet(crawlSettings),
+                    siteRepositories, pageRepositories, statusIndexingProcess, pageFetcher, crawlSettings, lemmaRepositories,
+                    indexRepositories, pageIndexerService, invertedIndex, lemmatizer);
             treeRecursive.indexPage(path);
         } catch (Exception e) {
             statusIndexingProcess.set(false);
@@ -136,24 +147,15 @@ public class IndexingServiceImpl implements IndexingService {
     }
 
     /**
-     * Удаление всех записей из БД по сайту
+     * Удаление всех записей из БД по сайту. Удаляется на стороне БД по site_id, id строк в приложение не загружаются
      * @param siteEntity
      */
     private void deleteAllRecordBySiteEntity(SiteEntity siteEntity) {
-        List<PageEntity> pageEntities = pageRepositories.findAllBySiteId(siteEntity.getId());
-        List<LemmaEntity> lemmaEntities = lemmaRepositories.findBySiteId(siteEntity.getId());
-        for (LemmaEntity lemmaEntity : lemmaEntities) {
-            List<IndexEntity> indexEntities = indexRepositories.findByLemmaId(lemmaEntity.getId());
-            for (IndexEntity indexEntity : indexEntities) {
-                indexRepositories.deleteById(indexEntity.getId());
-            }
-            lemmaRepositories.deleteById(lemmaEntity.getId());
-        }
-
-        for (PageEntity pageEntity : pageEntities) {
-            pageRepositories.deleteById(pageEntity.getId());
-        }
+        indexRepositories.deleteBySiteId(siteEntity.getId());
+        lemmaRepositories.deleteBySiteId(siteEntity.getId());
+        pageRepositories.deleteBySiteId(siteEntity.getId());
         siteRepositories.deleteById(siteEntity.getId());
+        invertedIndex.removeSite(siteEntity.getId());
     }
 
 }
@@ -5,13 +5,17 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import searchengine.config.CrawlSettings;
 import searchengine.model.IndexEntity;
 import searchengine.model.LemmaEntity;
 import searchengine.model.PageEntity;
 import searchengine.repositories.IndexRepositories;
 import searchengine.repositories.LemmaRepositories;
-import searchengine.services.LemmaFinder;
+import searchengine.repositories.projections.IndexView;
+import searchengine.services.Lemmatizer;
 import searchengine.services.interfaces.PageIndexerService;
+import searchengine.services.searchindex.InvertedIndex;
+import searchengine.services.searchindex.TokenPositions;
 
 import java.io.IOException;
 import java.util.List;
@@ -24,18 +28,23 @@ import java.util.Optional;
 public class PageIndexerServiceImpl implements PageIndexerService {
     private final LemmaRepositories lemmaRepository;
     private final IndexRepositories indexSearchRepository;
+    private final InvertedIndex invertedIndex;
+    private final Lemmatizer lemmatizer;
+    private final CrawlSettings crawlSettings;
 
     @Override
-    public void refreshIndex(String html, PageEntity refreshPage) throws IOException {
+    public void refreshIndex(String text, PageEntity refreshPage) throws IOException {
         log.info("refreshIndex-> Start refresh index page:{}", refreshPage.getPath());
 
-        LemmaFinder lemmaFinder = LemmaFinder.getRusInstance();
-        LemmaFinder lemmaFinderEng = LemmaFinder.getEngInstance();
-        Map<String, Integer> lemmas = lemmaFinder.collectRusLemmas(html);
-        lemmas.putAll(lemmaFinderEng.collectEngLemmas(html));
+        Map<String, TokenPositions> lemmaPositions = crawlSettings.isStorePositions()
+                ? lemmatizer.collectLemmaPositions(text) : Map.of();
+        Map<String, Integer> lemmas = lemmaPositions.isEmpty() ? lemmatizer.collectLemmas(text) : TokenPositions.toCounts(lemmaPositions);
+        List<String> oldLemmas = indexSearchRepository.findLemmasByPageId(refreshPage.getId());
         refreshLemma(refreshPage);
         indexSearchRepository.deleteByPageId(refreshPage.getId());
-        lemmas.entrySet().parallelStream().forEach(entry -> saveLemma(entry.getKey(), entry.getValue(), refreshPage));
+        lemmas.entrySet().parallelStream().forEach(entry ->
+                saveLemma(entry.getKey(), entry.getValue(), lemmaPositions.get(entry.getKey()), refreshPage));
+        invertedIndex.replacePage(refreshPage.getSite().getId(), refreshPage.getId(), oldLemmas, lemmas);
     }
 
     /**
@@ -44,11 +53,11 @@ public class PageIndexerServiceImpl implements PageIndexerService {
      */
     private void refreshLemma(PageEntity refreshPageEntity) {
         log.info("refreshLemma-> start refresh lemma");
-        List<IndexEntity> indexes = indexSearchRepository.findAllByPageId(refreshPageEntity.getId());
+        List<IndexView> indexes = indexSearchRepository.findViewsByPageId(refreshPageEntity.getId());
         indexes.forEach(index -> {
-            Optional<LemmaEntity> lemmaToRefresh = lemmaRepository.findById(index.getLemma().getId());
+            Optional<LemmaEntity> lemmaToRefresh = lemmaRepository.findById(index.getLemmaId());
             lemmaToRefresh.ifPresent(lemma -> {
-                lemma.setFrequency(lemma.getFrequency() - index.getRank());
+                lemma.setFrequency(lemma.getFrequency() - index.getLemmaRank());
                 lemmaRepository.saveAndFlush(lemma);
             });
         });
@@ -58,16 +67,17 @@ public class PageIndexerServiceImpl implements PageIndexerService {
      * Сохранение лемм для переиндексированной страницы
      * @param lemmaName лемма
      * @param frequencyLem количество лемм на сайте
+     * @param positions позиции леммы на странице или null, если позиции не сохраняются
      * @param pageEntity переиндексируемая страница
      */
     @Transactional
-    private void saveLemma(String lemmaName, Integer frequencyLem, PageEntity pageEntity) {
+    private void saveLemma(String lemmaName, Integer frequencyLem, TokenPositions positions, PageEntity pageEntity) {
         log.info("saveLemma-> start save lemma");
         LemmaEntity existLemmaInDB = lemmaRepository.lemmaExist(lemmaName, pageEntity.getSite().getId());
         if (existLemmaInDB != null) {
             existLemmaInDB.setFrequency(existLemmaInDB.getFrequency() + frequencyLem);
             lemmaRepository.saveAndFlush(existLemmaInDB);
-            createIndex(pageEntity, existLemmaInDB, frequencyLem);
+            createIndex(pageEntity, existLemmaInDB, frequencyLem, positions);
         } else {
             try {
                 LemmaEntity newLemmaToDB = new LemmaEntity();
@@ -76,10 +86,10 @@ public class PageIndexerServiceImpl implements PageIndexerService {
                 newLemmaToDB.setFrequency(frequencyLem);
                 newLemmaToDB.setSite(pageEntity.getSite());
                 lemmaRepository.saveAndFlush(newLemmaToDB);
-                createIndex(pageEntity, newLemmaToDB, frequencyLem);
+                createIndex(pageEntity, newLemmaToDB, frequencyLem, positions);
             } catch (DataIntegrityViolationException ex) {
                 log.debug("This lemma already exist");
-                saveLemma(lemmaName, frequencyLem, pageEntity);
+                saveLemma(lemmaName, frequencyLem, positions, pageEntity);
             }
         }
     }
@@ -89,8 +99,9 @@ public class PageIndexerServiceImpl implements PageIndexerService {
      * @param pageEntity
      * @param lemmaEntity
      * @param rank
+     * @param positions позиции леммы на странице или null
      */
-    private void createIndex(PageEntity pageEntity, LemmaEntity lemmaEntity, Integer rank) {
+    private void createIndex(PageEntity pageEntity, LemmaEntity lemmaEntity, Integer rank, TokenPositions positions) {
         log.info("createIndex-> start create index");
         IndexEntity indexSearchExist = indexSearchRepository.findByPageIdLemmaId(pageEntity.getId(), lemmaEntity.getId());
         if (indexSearchExist != null) {
@@ -102,6 +113,7 @@ public class PageIndexerServiceImpl implements PageIndexerService {
                 indexEntity.setPage(pageEntity);
                 indexEntity.setLemma(lemmaEntity);
                 indexEntity.setRank(rank);
+                indexEntity.setPositions(positions == null ? null : positions.encode());
                 indexSearchRepository.save(indexEntity);
             } catch (Exception e) {
                 log.error("Don`t save indexEntity:{}", e);
@@ -1,403 +1,543 @@
 package searchengine.services.implimentations;
 
 
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.lucene.morphology.WrongCharaterException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.safety.Safelist;
 import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
 import searchengine.dto.search.SearchData;
 import searchengine.dto.search.SearchResponse;
+import searchengine.dto.search.SiteFacet;
 import searchengine.model.*;
-import searchengine.repositories.IndexRepositories;
-import searchengine.repositories.LemmaRepositories;
 import searchengine.repositories.PageRepositories;
 import searchengine.repositories.SiteRepositories;
-import searchengine.services.LemmaFinder;
+import searchengine.services.QueryHighlighter;
+import searchengine.services.QueryParser;
+import searchengine.services.SnippetBuilder;
 import searchengine.services.interfaces.SearchService;
+import searchengine.services.searchindex.InvertedIndex;
+import searchengine.services.searchindex.PageBitmap;
+import searchengine.services.searchindex.PositionIndex;
+import searchengine.services.searchindex.Postings;
+import searchengine.services.searchindex.PostingsIntersection;
+import searchengine.services.searchindex.QueryCache;
+import searchengine.services.searchindex.RankedPages;
+import searchengine.services.searchindex.SearchCursors;
+import searchengine.services.searchindex.ScoringModel;
+import searchengine.services.searchindex.SearchQuery;
+import searchengine.services.searchindex.SiteStatistics;
+import searchengine.services.searchindex.TopKCollector;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class SearchServiceImpl implements SearchService {
+    /**
+     * Сколько страниц - кандидатов проверяется на фразы одним запросом позиций
+     */
+    private static final int PHRASE_CHECK_BATCH = 256;
+
     private final SiteRepositories siteRepositories;
     private final PageRepositories pageRepositories;
-    private final IndexRepositories indexRepositories;
-    private final LemmaRepositories lemmaRepositories;
+    private final InvertedIndex invertedIndex;
+    private final QueryParser queryParser;
+    private final PositionIndex positionIndex;
+    private final SnippetBuilder snippetBuilder;
+    private final QueryCache queryCache;
+    private final SearchCursors searchCursors;
+    private final ScoringModel scoringModel;
+    private final ExecutorService searchExecutor;
+    private final int maxLimit;
+
+    public SearchServiceImpl(SiteRepositories siteRepositories, PageRepositories pageRepositories, InvertedIndex invertedIndex,
+                             QueryParser queryParser, PositionIndex positionIndex, SnippetBuilder snippetBuilder, QueryCache queryCache, SearchCursors searchCursors,
+                             Map<String, ScoringModel> scoringModels,
+                             SearchSettings searchSettings) {
+        this.siteRepositories = siteRepositories;
+        this.pageRepositories = pageRepositories;
+        this.invertedIndex = invertedIndex;
+        this.queryParser = queryParser;
+        this.positionIndex = positionIndex;
+        this.snippetBuilder = snippetBuilder;
+        this.queryCache = queryCache;
+        this.searchCursors = searchCursors;
+        this.scoringModel = scoringModels.get(searchSettings.getScoringModel());
+        if (scoringModel == null) {
+            throw new IllegalStateException("Unknown scoring model " + searchSettings.getScoringModel()
+                    + ", available: " + scoringModels.keySet());
+        }
+        this.maxLimit = searchSettings.getMaxLimit();
+        this.searchExecutor = Executors.newFixedThreadPool(Math.max(searchSettings.getSiteParallelism(), 1),
+                Thread.ofVirtual().name("site-search-", 0).factory());
+    }
 
     @Override
-    public SearchResponse search(String query, String site, int offset, int limit) throws IOException {
+    public SearchResponse search(String query, String site, int offset, int limit, boolean facets) throws IOException {
         log.info("search-> start method search");
+        String parametersError = getParametersError(query, offset, limit);
+        if (parametersError != null) {
+            return getSearchResponseBadRequest(new SearchResponse(), parametersError);
+        }
         List<SiteEntity> siteEntities = getSiteEntities(site);
-        LemmaFinder lemmaFinder = LemmaFinder.getRusInstance();
-        LemmaFinder lemmaFinderEng = LemmaFinder.getEngInstance();
-        List<LemmaEntity> allLemmas = getAllLemmaByQuery(query, siteEntities, lemmaFinder, lemmaFinderEng);
-        log.info("search: Find lemmas by query: {}", allLemmas);
+        SearchQuery searchQuery = parseQuery(query);
+        Set<String> queryLemmas = searchQuery.lemmas();
+        log.info("search: Find lemmas by query: {}, phrases: {}", queryLemmas, searchQuery.phrases().size());
 
         SearchResponse searchResponse = new SearchResponse();
-        if (allLemmas.isEmpty()) {
+        if (queryLemmas.isEmpty()) {
             return getSearchResponseEmpty(searchResponse);
         }
 
-        List<LemmaEntity> sortedLemmas = getSortedLemmasByFrequency(allLemmas);
+        List<Long> generations = getGenerations(siteEntities);
+        RankedPages rankedPages = getRankedPages(siteEntities, searchQuery, getWindowEnd(offset, limit));
 
-        List<IndexEntity> indexEntities = new ArrayList<>();
-        List<Integer> pageIdsToSave = new ArrayList<>();
-        getPageToSave(sortedLemmas, indexEntities, pageIdsToSave);
-
-        if (pageIdsToSave.isEmpty()) {
+        if (rankedPages.total() == 0) {
             return getSearchResponseEmpty(searchResponse);
         }
+        return createSearchResponse(searchResponse, searchQuery, siteEntities, generations, rankedPages, offset, limit, facets);
+    }
 
-        List<PageEntity> pageEntities = pageRepositories.findByPageIds(pageIdsToSave);
-        HashMap<PageEntity, Float> absRelevantPages = calculateAllAbsRelevant(pageEntities, indexEntities);
-        HashMap<PageEntity, Float> relevantPages = calculateAllRelevant(absRelevantPages);
-        List<SearchData> resultSearchDates = generateResultSearchDates(relevantPages, siteEntities, lemmaFinder, lemmaFinderEng, sortedLemmas);
-
-        if (!resultSearchDates.isEmpty()) {
-            searchResponse.setResult(true);
-            searchResponse.setCount(resultSearchDates.size());
-            searchResponse.setData(getSortedSearchDataWithOffset(resultSearchDates, offset, limit));
-        } else {
-            getSearchResponseEmpty(searchResponse);
+    @Override
+    public SearchResponse searchByCursor(String cursor, int limit, boolean facets) {
+        log.info("searchByCursor-> start method search by cursor");
+        SearchResponse searchResponse = new SearchResponse();
+        String limitError = getLimitError(limit);
+        if (limitError != null) {
+            return getSearchResponseBadRequest(searchResponse, limitError);
         }
-
-        return searchResponse;
+        SearchCursors.CursorState state = searchCursors.get(cursor);
+        if (state == null || !state.generations().equals(getGenerations(state.siteEntities()))) {
+            searchResponse.setResult(false);
+            searchResponse.setError("Результаты поиска устарели, повторите поиск");
+            return searchResponse;
+        }
+        RankedPages rankedPages = state.rankedPages();
+        int offset = state.offset();
+        if (getWindowEnd(offset, limit) > rankedPages.size() && rankedPages.size() < rankedPages.total()) {
+            rankedPages = getRankedPages(state.siteEntities(), state.searchQuery(), getWindowEnd(offset, limit));
+        }
+        return createSearchResponse(searchResponse, state.searchQuery(), state.siteEntities(), state.generations(),
+                rankedPages, offset, limit, facets);
     }
 
     /**
-     * Наполняет список id-шниками страниц - кандидаты к результату поиска по леммам
-     *
-     * @param sortedLemmas  отсортированные леммы по порядку увеличения частоты встречаемости
-     * @param indexEntities Список полученных связок лемм и страниц
-     * @param pageIdsToSave список id страниц, кандидатов к результату поиска по леммам
+     * @return текст ошибки или null, если параметры поиска допустимы
      */
-    private void getPageToSave(List<LemmaEntity> sortedLemmas, List<IndexEntity> indexEntities, List<Integer> pageIdsToSave) {
-        List<IndexEntity> indexEntity;
-        for (LemmaEntity lemmaEntity : sortedLemmas) {
-            indexEntity = indexRepositories.findByLemmaId(lemmaEntity.getId());
-            indexEntities.addAll(indexEntity);
-            if (lemmaEntity == sortedLemmas.get(0)) {
-                indexEntities.addAll(indexRepositories.findByLemmaId(sortedLemmas.get(0).getId()));
-                pageIdsToSave.addAll(getPageIdsFromIndex(indexEntities));
-            } else {
-                indexEntities.addAll(indexRepositories.findByPageIdsLemmaId(pageIdsToSave, lemmaEntity.getId()));
-                pageIdsToSave.addAll(getPageIdsFromIndex(indexEntities));
-            }
+    private String getParametersError(String query, int offset, int limit) {
+        if (query == null || query.isBlank()) {
+            return "Задан пустой поисковый запрос";
         }
+        if (offset < 0) {
+            return "Параметр offset не может быть отрицательным";
+        }
+        return getLimitError(limit);
     }
 
     /**
-     * Получить пустой ответ, чтобы прокинуть на фронт
-     *
-     * @param searchResponse
-     * @return
+     * @return текст ошибки или null, если limit допустим
      */
-    private static SearchResponse getSearchResponseEmpty(SearchResponse searchResponse) {
+    private String getLimitError(int limit) {
+        return limit < 1 || limit > maxLimit ? "Параметр limit должен быть от 1 до " + maxLimit : null;
+    }
+
+    /**
+     * Ответ на запрос с неверными параметрами, контроллер вернет его с кодом 400
+     */
+    private static SearchResponse getSearchResponseBadRequest(SearchResponse searchResponse, String error) {
         searchResponse.setResult(false);
-        searchResponse.setError("Не найдено ни одной страницы");
+        searchResponse.setError(error);
+        searchResponse.setBadRequest(true);
         return searchResponse;
     }
 
     /**
-     * @param relevantPages Map страница кандидат со своей релевантностью
-     * @param siteEntities  список страниц, по которым искали
-     * @param lemmaFinder   сервис для поиска лемм
-     * @param sortedLemmas  список отсортированных лемм
-     * @return список с результатом поиска по страницам
+     * @return позиция после последней страницы окна выдачи, без переполнения int при большом offset
      */
-    private static List<SearchData> generateResultSearchDates(HashMap<PageEntity, Float> relevantPages, List<SiteEntity> siteEntities,
-                                                              LemmaFinder lemmaFinder, LemmaFinder lemmaFinderEng, List<LemmaEntity> sortedLemmas) {
-        log.info("generateResultSearchDates-> start method");
-        List<SearchData> resultSearchDates = new ArrayList<>();
-
-        for (PageEntity pageEntity : relevantPages.keySet()) {
-            Document document = Jsoup.parse(pageEntity.getContent());
+    private static int getWindowEnd(int offset, int limit) {
+        return (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+    }
 
-            SiteEntity searchSite = new SiteEntity();
-            for (SiteEntity siteEntity : siteEntities) {
-                if (siteEntity.getId() == pageEntity.getSite().getId()) {
-                    searchSite = siteEntity;
-                }
-            }
-            String snippet = getSnippet(document.text(), lemmaFinder, lemmaFinderEng, sortedLemmas).toString();
-            if (!snippet.isEmpty()) {
-                SearchData searchData = new SearchData();
-                searchData.setUri(pageEntity.getPath());
-                searchData.setSite(searchSite.getUrl());
-                searchData.setTitle(document.title());
-                searchData.setSiteName(searchSite.getName());
-                searchData.setSnippet(snippet);
-                searchData.setRelevance(relevantPages.get(pageEntity));
-                resultSearchDates.add(searchData);
-            }
+    /**
+     * Ответ с окном выдачи и курсором на следующее окно, если страницы еще остались
+     */
+    private SearchResponse createSearchResponse(SearchResponse searchResponse, SearchQuery searchQuery, List<SiteEntity> siteEntities,
+                                                List<Long> generations, RankedPages rankedPages, int offset, int limit, boolean facets) {
+        searchResponse.setResult(true);
+        searchResponse.setCount(rankedPages.total());
+        searchResponse.setData(generateResultSearchDates(rankedPages, offset, limit, siteEntities, searchQuery.lemmas()));
+        int windowEnd = getWindowEnd(offset, limit);
+        if (windowEnd < rankedPages.total()) {
+            searchResponse.setNextCursor(searchCursors.create(searchQuery, siteEntities, generations, rankedPages, windowEnd));
         }
-
-        return resultSearchDates;
+        if (facets) {
+            searchResponse.setFacets(getSiteFacets(rankedPages, siteEntities));
+        }
+        return searchResponse;
     }
 
     /**
-     * Получение сниппета по странице, которая была найдена в результате поиска
+     * Количество найденных страниц по сайтам берется из ранжирования: каждый сайт считает свои страницы-кандидаты,
+     * поэтому ни запросов к БД, ни сниппетов не нужно
      *
-     * @param text         контент страницы, которая была найдена в результате поиска
-     * @param lemmaFinder  сервис для поиска лемм
-     * @param sortedLemmas список отсортированных лемм
-     * @return сниппет по странице, которая была найдена в результате поиска
+     * @param rankedPages  результат ранжирования
+     * @param siteEntities сайты, по которым искали
+     * @return сайты с найденными страницами по убыванию количества страниц
      */
-    private static StringBuilder getSnippet(String text, LemmaFinder lemmaFinder, LemmaFinder lemmaFinderEng, List<LemmaEntity> sortedLemmas) {
-        log.info("getSnippet-> start method");
-        text = Jsoup.clean(text, Safelist.none());
-        StringBuilder textWithLemmas = new StringBuilder();
-        TreeMap<Integer, String> positionsFirstHighlightedWords = new TreeMap<>();
-        String lemma = "";
-        List<String> addedLemmas = new ArrayList<>();
-
-        StringBuilder word = new StringBuilder();
-        for (char symbol : text.toCharArray()) {
-            textWithLemmas.append(symbol);
-            if (Character.isLetter(symbol)) {
-                word.append(symbol);
-            } else {
-                try {
-                    lemma = getLemmaByWord(word, lemmaFinder, lemmaFinderEng);
-
-                    if (containsLemmaInListLemmaEntities(sortedLemmas, lemma)) {
-                        boldingLemmaInText(textWithLemmas, word, positionsFirstHighlightedWords, addedLemmas, lemma);
-                    }
-                    word = new StringBuilder();
-                } catch (WrongCharaterException wce) {
-                    word = new StringBuilder();
-                }
+    private static List<SiteFacet> getSiteFacets(RankedPages rankedPages, List<SiteEntity> siteEntities) {
+        List<SiteFacet> siteFacets = new ArrayList<>();
+        for (SiteEntity siteEntity : siteEntities) {
+            int count = rankedPages.siteTotals().getOrDefault(siteEntity.getId(), 0);
+            if (count > 0) {
+                SiteFacet siteFacet = new SiteFacet();
+                siteFacet.setSite(siteEntity.getUrl());
+                siteFacet.setSiteName(siteEntity.getName());
+                siteFacet.setCount(count);
+                siteFacets.add(siteFacet);
             }
         }
-        return createSnippet(positionsFirstHighlightedWords, textWithLemmas);
+        siteFacets.sort(Comparator.comparingInt(SiteFacet::getCount).reversed());
+        return siteFacets;
     }
 
-    private static String getLemmaByWord(StringBuilder word, LemmaFinder lemmaFinder, LemmaFinder lemmaFinderEng) {
-        String wordLowerCase;
-        if (!word.isEmpty()) {
-            wordLowerCase = word.toString().toLowerCase();
-        } else {
-            wordLowerCase = ".";
-        }
-        String lemma = lemmaFinder.getLemmaByWord(wordLowerCase);
-        if (Objects.equals(lemma, "")){
-            lemma = lemmaFinderEng.getLemmaByWord(wordLowerCase);
-        }
-        return lemma;
+    private List<Long> getGenerations(List<SiteEntity> siteEntities) {
+        return siteEntities.stream().map(SiteEntity::getId).sorted().map(invertedIndex::getGeneration).toList();
     }
 
     /**
-     * Проверяет вхождение леммы в отсортированный список лемм из БД
+     * Ранжированный результат запроса берется из кэша, при промахе считается с запасом на следующие окна выдачи
      *
-     * @param sortedLemmas
-     * @param lemma
-     * @return
+     * @param siteEntities сайты, по которым идет поиск
+     * @param searchQuery  разобранный запрос
+     * @param limit        позиция после последней страницы запрошенного окна
+     * @return лучшие страницы по убыванию релевантности
      */
-    private static boolean containsLemmaInListLemmaEntities(List<LemmaEntity> sortedLemmas, String lemma) {
-        List<String> lemmas = new ArrayList<>();
-        for (LemmaEntity sortedLemma : sortedLemmas) {
-            lemmas.add(sortedLemma.getLemma());
+    private RankedPages getRankedPages(List<SiteEntity> siteEntities, SearchQuery searchQuery, int limit) {
+        List<Integer> siteIds = siteEntities.stream().map(SiteEntity::getId).sorted().toList();
+        List<Long> generations = getGenerations(siteEntities);
+        QueryCache.Key cacheKey = queryCache.createKey(searchQuery, siteIds, generations, scoringModel.getRankingVersion());
+        RankedPages rankedPages = queryCache.get(cacheKey, limit);
+        if (rankedPages != null) {
+            log.info("getRankedPages: result found in cache");
+            return rankedPages;
         }
-        return lemmas.contains(lemma);
+        Set<String> lemmas = new HashSet<>(searchQuery.lemmas());
+        lemmas.addAll(searchQuery.excluded());
+        Map<Integer, Map<String, Postings>> postingsBySite = invertedIndex.getPostings(siteIds, lemmas);
+        rankedPages = rankSites(postingsBySite, searchQuery, queryCache.getDepth(limit));
+        queryCache.put(cacheKey, rankedPages);
+        return rankedPages;
     }
 
     /**
+     * Каждый сайт ранжируется независимо и параллельно, затем лучшие страницы сайтов сливаются в общий результат
      *
-     * @param positionsFirstHighlightedWords индекс первого вхождения искомого слова в текст
-     * @param textWithLemmas текст со страницы с леммами
-     * @return сниппет
+     * @param postingsBySite списки страниц по леммам запроса для каждого сайта
+     * @param searchQuery    разобранный запрос
+     * @param limit          сколько лучших страниц нужно получить
+     * @return лучшие страницы всех сайтов по убыванию релевантности
      */
-    public static StringBuilder createSnippet(TreeMap<Integer, String> positionsFirstHighlightedWords, StringBuilder textWithLemmas) {
-        log.info("createSnippet-> start method");
-        StringBuilder snippet = new StringBuilder();
-        int prevPosition = 0;
-        int startPosition;
-        int endPosition;
-        int endIndexHighlightedWord;
-        int countSymbolsFromLemma;
-        try {
-            countSymbolsFromLemma = Math.max(160 / positionsFirstHighlightedWords.size(), 25);
-        } catch (ArithmeticException e){
-            return new StringBuilder();
+    private RankedPages rankSites(Map<Integer, Map<String, Postings>> postingsBySite, SearchQuery searchQuery, int limit) {
+        if (postingsBySite.isEmpty()) {
+            return RankedPages.EMPTY;
         }
-
-        for (Map.Entry<Integer, String> positionHighlightedWord : positionsFirstHighlightedWords.entrySet()) {
-            endIndexHighlightedWord =positionHighlightedWord.getKey() + positionHighlightedWord.getValue().length();
-
-            if (prevPosition <= endIndexHighlightedWord) {
-                startPosition = Math.max(positionHighlightedWord.getKey() - countSymbolsFromLemma, 0);
-                endPosition = Math.min(endIndexHighlightedWord + countSymbolsFromLemma, textWithLemmas.length() - 1);
-
-                String subText = textWithLemmas.substring(startPosition, endPosition);
-                subText = getSubTextTrim(startPosition, subText);
-                getSubTextWithThreeDots(textWithLemmas, endPosition, subText, snippet);
-                prevPosition = endIndexHighlightedWord - 1 +countSymbolsFromLemma;
+        if (postingsBySite.size() == 1) {
+            Map.Entry<Integer, Map<String, Postings>> site = postingsBySite.entrySet().iterator().next();
+            return rankSite(site.getKey(), site.getValue(), searchQuery, limit);
+        }
+        List<Future<RankedPages>> futures = new ArrayList<>();
+        for (Map.Entry<Integer, Map<String, Postings>> site : postingsBySite.entrySet()) {
+            futures.add(searchExecutor.submit(() -> rankSite(site.getKey(), site.getValue(), searchQuery, limit)));
+        }
+        List<RankedPages> siteRankedPages = new ArrayList<>();
+        try {
+            for (Future<RankedPages> future : futures) {
+                siteRankedPages.add(future.get());
             }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Search was interrupted", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Search by site failed", e.getCause());
         }
-        return new StringBuilder(snippet.toString()).append(". . .");
+        return RankedPages.merge(siteRankedPages, limit);
     }
 
     /**
-     * Добавляет три точки в снипет
-     * @param textWithLemmas
-     * @param endPosition
-     * @param subText
-     * @param snippet
+     * @param siteId       id сайта
+     * @param sitePostings списки страниц сайта по леммам запроса
+     * @param searchQuery  разобранный запрос
+     * @param limit        сколько лучших страниц сайта нужно получить
+     * @return лучшие страницы сайта
      */
-    private static void getSubTextWithThreeDots(StringBuilder textWithLemmas, int endPosition, String subText, StringBuilder snippet) {
-        if (endPosition != textWithLemmas.length() - 1) {
-            int index = subText.lastIndexOf('\s');
-            subText = subText.substring(0, index);
-            snippet.append(". . .").append(subText);
-        }
+    private RankedPages rankSite(int siteId, Map<String, Postings> sitePostings, SearchQuery searchQuery, int limit) {
+        int[] candidates = findCandidates(sitePostings, searchQuery);
+        TopKCollector topKCollector = new TopKCollector(Math.min(limit, candidates.length));
+        collectRankedPages(candidates, getSortedPostingsByFrequency(sitePostings, searchQuery.lemmas()),
+                invertedIndex.getStatistics(siteId), searchQuery.phrases(), topKCollector);
+        return topKCollector.toRankedPages(siteId);
     }
 
     /**
-     * Убирает лишнии пробелы из текста
-     * @param startPosition
-     * @param subText
-     * @return
+     * Страницы, на которых есть хотя бы одна лемма каждой группы запроса и нет исключенных лемм.
+     * Группы объединяются, пересекаются и вычитаются как сжатые множества страниц, начиная с самой маленькой группы.
+     * Группы, ни одной леммы которых нет на сайте, не участвуют в поиске.
+     *
+     * @param sitePostings списки страниц сайта по леммам запроса
+     * @param searchQuery  разобранный запрос
+     * @return отсортированные id страниц кандидатов
      */
-    private static String getSubTextTrim(int startPosition, String subText) {
-        if (startPosition != 0) {
-            String split = subText.split("\\s", 2)[0];
-            subText = subText.substring(split.length()).trim();
+    private static int[] findCandidates(Map<String, Postings> sitePostings, SearchQuery searchQuery) {
+        List<PageBitmap> groups = new ArrayList<>();
+        for (Set<String> group : searchQuery.groups()) {
+            PageBitmap bitmap = PageBitmap.EMPTY;
+            for (String lemma : group) {
+                bitmap = bitmap.or(sitePostings.getOrDefault(lemma, Postings.EMPTY).bitmap());
+            }
+            if (!bitmap.isEmpty()) {
+                groups.add(bitmap);
+            }
         }
-        return subText;
+        if (groups.isEmpty()) {
+            return new int[0];
+        }
+        groups.sort(Comparator.comparingInt(PageBitmap::cardinality));
+        PageBitmap candidates = groups.get(0);
+        for (int i = 1; i < groups.size() && !candidates.isEmpty(); i++) {
+            candidates = candidates.and(groups.get(i));
+        }
+        for (String lemma : searchQuery.excluded()) {
+            candidates = candidates.andNot(sitePostings.getOrDefault(lemma, Postings.EMPTY).bitmap());
+        }
+        return candidates.toArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchExecutor.shutdownNow();
     }
 
     /**
-     * Получение части текста с леммой + выделение жирным леммы
-     * @param textWithLemmas найденный текст включая последнюю лемму
-     * @param word слово в тексте подходящие под искомую лемму
-     * @param positionsFirstHighlightedWords
-     * @param addedLemmas
-     * @param lemma
+     * Рассчет релевантности страниц - кандидатов к результату поиска по леммам и отбор лучших из них.
+     * Вклад лемм считается от самой весомой к самой легкой (MaxScore): как только набранная релевантность
+     * плюс верхние границы оставшихся лемм не дотягивает до худшей из лучших страниц, кандидат отбрасывается
+     * без расчета остальных лемм. Лемма, которой нет на странице (другое слово группы OR), ничего не добавляет.
+     * Фразы в кавычках проверяются по позициям у всех кандидатов пачками по PHRASE_CHECK_BATCH страниц,
+     * чтобы количество найденных оставалось точным: страница без фразы не попадает ни в отбор, ни в количество,
+     * а отсеченная по релевантности страница с фразой только учитывается в количестве.
+     *
+     * @param candidates     отсортированные id страниц, подходящих под запрос
+     * @param sortedPostings списки страниц по леммам в порядке увеличения частоты встречаемости
+     * @param siteStatistics статистика страниц сайта для формулы релевантности
+     * @param phrases        фразы запроса
+     * @param topKCollector  отбор самых релевантных страниц
      */
-    public static void boldingLemmaInText(StringBuilder textWithLemmas, StringBuilder word, TreeMap<Integer,
-            String> positionsFirstHighlightedWords, List<String> addedLemmas, String lemma) {
-        String textBeforeLemma = textWithLemmas.substring(0, textWithLemmas.length() - word.length() - 1);
-        textWithLemmas.delete(0, textWithLemmas.length()).append(textBeforeLemma);
-        word.insert(0, "<b>").append("</b> ");
-        textWithLemmas.append(word);
-        if (!addedLemmas.contains(lemma)) {
-            addedLemmas.add(lemma);
-            positionsFirstHighlightedWords.put(textWithLemmas.indexOf(word.toString()), word.toString());
+    private void collectRankedPages(int[] candidates, List<Postings> sortedPostings, SiteStatistics siteStatistics,
+                                    List<SearchQuery.Phrase> phrases, TopKCollector topKCollector) {
+        if (candidates.length == 0) {
+            return;
+        }
+        int termsCount = sortedPostings.size();
+        float[] upperBounds = new float[termsCount];
+        Integer[] order = new Integer[termsCount];
+        for (int t = 0; t < termsCount; t++) {
+            Postings postings = sortedPostings.get(t);
+            upperBounds[t] = scoringModel.upperBound(postings.maxRank(), postings.size(), siteStatistics);
+            order[t] = t;
+        }
+        Arrays.sort(order, (first, second) -> Float.compare(upperBounds[second], upperBounds[first]));
+        float[] remainingBounds = new float[termsCount + 1];
+        for (int t = termsCount - 1; t >= 0; t--) {
+            remainingBounds[t] = remainingBounds[t + 1] + upperBounds[order[t]];
+        }
+
+        boolean checkPhrases = !phrases.isEmpty() && positionIndex.isEnabled();
+        int[] pendingPageIds = new int[checkPhrases ? PHRASE_CHECK_BATCH : 0];
+        float[] pendingScores = new float[pendingPageIds.length];
+        boolean[] pendingPruned = new boolean[pendingPageIds.length];
+        int pending = 0;
+        int[] cursors = new int[termsCount];
+        for (int pageId : candidates) {
+            float threshold = topKCollector.threshold();
+            int pageLength = siteStatistics.getPageLength(pageId);
+            float score = 0;
+            boolean pruned = false;
+            for (int t = 0; t < termsCount; t++) {
+                if (score + remainingBounds[t] < threshold) {
+                    pruned = true;
+                    break;
+                }
+                Postings postings = sortedPostings.get(order[t]);
+                cursors[t] = PostingsIntersection.gallop(postings, cursors[t], pageId);
+                if (cursors[t] < postings.size() && postings.pageId(cursors[t]) == pageId) {
+                    score += scoringModel.score(postings.rank(cursors[t]), postings.size(), pageLength, siteStatistics);
+                }
+            }
+            if (checkPhrases) {
+                pendingPageIds[pending] = pageId;
+                pendingScores[pending] = score;
+                pendingPruned[pending++] = pruned;
+                if (pending == PHRASE_CHECK_BATCH) {
+                    offerPhraseMatches(pendingPageIds, pendingScores, pendingPruned, pending, phrases, topKCollector);
+                    pending = 0;
+                }
+            } else if (pruned) {
+                topKCollector.skip();
+            } else {
+                topKCollector.offer(pageId, score);
+            }
+        }
+        if (pending > 0) {
+            offerPhraseMatches(pendingPageIds, pendingScores, pendingPruned, pending, phrases, topKCollector);
         }
     }
 
     /**
-     * Сортировка результата поиска по offset
+     * Передает в отбор страницы пачки, на которых найдены все фразы, остальные страницы отбрасываются
      *
-     * @param resultSearchDates результат поиска
-     * @param offset
-     * @param limit
-     * @return отсортированный результат
+     * @param pageIds отсортированные id страниц пачки
+     * @param scores  релевантность страниц пачки
+     * @param pruned  страница отсечена по релевантности и только учитывается в количестве найденных
+     * @param count   размер пачки
      */
-    private static List<SearchData> getSortedSearchDataWithOffset(List<SearchData> resultSearchDates, int offset, int limit) {
-        List<SearchData> sortedSearchDates = resultSearchDates.stream().sorted(Comparator.comparingDouble(SearchData::getRelevance).reversed()).toList();
-        List<SearchData> result = new ArrayList<>();
-        for (int i = offset; i <= offset + limit; i++) {
-            try {
-                result.add(sortedSearchDates.get(i));
-            } catch (IndexOutOfBoundsException exception) {
-                break;
+    private void offerPhraseMatches(int[] pageIds, float[] scores, boolean[] pruned, int count,
+                                    List<SearchQuery.Phrase> phrases, TopKCollector topKCollector) {
+        int[] matched = positionIndex.filterPhrases(Arrays.copyOf(pageIds, count), phrases);
+        int index = 0;
+        for (int pageId : matched) {
+            while (pageIds[index] != pageId) {
+                index++;
+            }
+            if (pruned[index]) {
+                topKCollector.skip();
+            } else {
+                topKCollector.offer(pageId, scores[index]);
             }
         }
-        return result;
     }
 
     /**
-     * Рассчет релевантности для каждой страницы
+     * Получить пустой ответ, чтобы прокинуть на фронт
      *
-     * @param absRelevantPages Map страница кандидат со своей абсолютной релевантностью
-     * @return Map страница кандидат со своей релевантностью
+     * @param searchResponse
+     * @return
      */
-    private static HashMap<PageEntity, Float> calculateAllRelevant(HashMap<PageEntity, Float> absRelevantPages) {
-        log.info("calculateAllRelevant-> start method");
-        Float maxRelevant = absRelevantPages.values().stream().max(Float::compareTo).get();
-        HashMap<PageEntity, Float> relevantPages = new HashMap<>();
-        for (PageEntity indexPage : absRelevantPages.keySet()) {
-            relevantPages.put(indexPage, absRelevantPages.get(indexPage) / maxRelevant);
-        }
-        return relevantPages;
+    private static SearchResponse getSearchResponseEmpty(SearchResponse searchResponse) {
+        searchResponse.setResult(false);
+        searchResponse.setError("Не найдено ни одной страницы");
+        return searchResponse;
     }
 
     /**
-     * Рассчет абсолютной релевантности
+     * Заголовок и сниппет строятся только для страниц, попавших в запрошенное окно выдачи.
+     * Если слов запроса в тексте страницы нет, сниппетом становится начало текста, заголовок или адрес страницы
      *
-     * @param pageEntities  список всех страниц кандидатов после поиска
-     * @param indexEntities список всех связок страниц кандидатов и их лемм
-     * @return Map страница кандидат со своей абсолютной релевантностью
+     * @param rankedPages  лучшие страницы по убыванию релевантности
+     * @param offset       позиция первой страницы окна
+     * @param limit        размер окна
+     * @param siteEntities список страниц, по которым искали
+     * @param queryLemmas  леммы запроса
+     * @return список с результатом поиска по страницам окна в порядке убывания релевантности
      */
-    private static HashMap<PageEntity, Float> calculateAllAbsRelevant(List<PageEntity> pageEntities, List<IndexEntity> indexEntities) {
-        log.info("calculateAllAbsRelevant-> start method");
-        List<IndexEntity> indexEntitiesByPage;
-        HashMap<PageEntity, Float> absRelevantPages = new HashMap<>();
-        for (PageEntity pageEntity : pageEntities) {
-            indexEntitiesByPage = indexEntities.stream().filter(indexEntity -> indexEntity.getPageId() == pageEntity.getId()).toList();
-            float relevant = 0;
-            for (IndexEntity indexEntity : indexEntitiesByPage) {
-                relevant += indexEntity.getRank();
+    private List<SearchData> generateResultSearchDates(RankedPages rankedPages, int offset, int limit, List<SiteEntity> siteEntities,
+                                                       Set<String> queryLemmas) {
+        log.info("generateResultSearchDates-> start method");
+        List<SearchData> resultSearchDates = new ArrayList<>();
+        int fromIndex = Math.min(offset, rankedPages.size());
+        int toIndex = Math.min(getWindowEnd(offset, limit), rankedPages.size());
+        if (fromIndex >= toIndex) {
+            return resultSearchDates;
+        }
+        List<Integer> pageIds = Arrays.stream(rankedPages.pageIds(), fromIndex, toIndex).boxed().toList();
+        Map<Integer, PageEntity> pageEntities = new HashMap<>();
+        for (PageEntity pageEntity : pageRepositories.findByPageIds(pageIds)) {
+            pageEntities.put(pageEntity.getId(), pageEntity);
+        }
+
+        QueryHighlighter highlighter = snippetBuilder.createHighlighter(queryLemmas);
+        Map<Integer, Map<String, byte[]>> positions = positionIndex.getPositions(pageIds, queryLemmas);
+        for (int i = fromIndex; i < toIndex; i++) {
+            PageEntity pageEntity = pageEntities.get(rankedPages.pageIds()[i]);
+            if (pageEntity == null) {
+                continue;
             }
-            absRelevantPages.put(pageEntity, relevant);
+
+            SiteEntity searchSite = new SiteEntity();
+            for (SiteEntity siteEntity : siteEntities) {
+                if (siteEntity.getId() == pageEntity.getSite().getId()) {
+                    searchSite = siteEntity;
+                }
+            }
+            String text = getPageText(pageEntity);
+            String snippet = snippetBuilder.build(text, highlighter, positions.getOrDefault(pageEntity.getId(), Map.of()));
+            if (snippet.isEmpty()) {
+                snippet = snippetBuilder.buildLeading(text, pageEntity.getTitle() == null || pageEntity.getTitle().isBlank()
+                        ? pageEntity.getPath() : pageEntity.getTitle());
+            }
+            SearchData searchData = new SearchData();
+            searchData.setUri(pageEntity.getPath());
+            searchData.setSite(searchSite.getUrl());
+            searchData.setTitle(pageEntity.getTitle());
+            searchData.setSiteName(searchSite.getName());
+            searchData.setSnippet(snippet);
+            searchData.setRelevance(rankedPages.relevance(i));
+            resultSearchDates.add(searchData);
         }
-        return absRelevantPages;
+
+        return resultSearchDates;
     }
 
-    private static List<Integer> getPageIdsFromIndex(List<IndexEntity> indexEntities) {
-        List<Integer> pageToSave = new ArrayList<>();
-        for (IndexEntity indexEntity : indexEntities) {
-            pageToSave.add(indexEntity.getPageId());
+    /**
+     * Текст страницы берется из извлеченного при индексации поля. HTML разбирается только для страниц,
+     * проиндексированных до появления поля text
+     *
+     * @param pageEntity страница из результата поиска
+     * @return видимый текст страницы
+     */
+    private static String getPageText(PageEntity pageEntity) {
+        if (pageEntity.getText() == null && pageEntity.getContent() != null && !pageEntity.getContent().isEmpty()) {
+            Document document = Jsoup.parse(pageEntity.getContent());
+            pageEntity.setTitle(document.title());
+            pageEntity.setText(document.text());
         }
-        return pageToSave;
+        return pageEntity.getText() == null ? "" : pageEntity.getText();
     }
 
     /**
-     * Сортировка лемм по частоте встречаемости - от самых редких до самых частых
+     * Сортировка списков страниц по частоте встречаемости лемм - от самых редких до самых частых.
+     * Леммы, которых нет на сайте, и исключенные леммы в релевантности не участвуют.
      *
-     * @param allLemmas все найденные леммы в БД по искомому выражению
+     * @param postings Map лемма запроса -> список страниц сайта с этой леммой
+     * @param lemmas   леммы запроса без исключенных
      * @return
      */
-    private static List<LemmaEntity> getSortedLemmasByFrequency(List<LemmaEntity> allLemmas) {
-        log.info("getSortedLemmasByFrequency-> start method");
-        return allLemmas.stream()
-                .map(lemmaEntity -> new AbstractMap.SimpleEntry<>(lemmaEntity.getFrequency(), lemmaEntity))
-                .sorted(Comparator.comparingInt(Map.Entry::getKey))
-                .map(Map.Entry::getValue).toList();
+    private static List<Postings> getSortedPostingsByFrequency(Map<String, Postings> postings, Set<String> lemmas) {
+        log.info("getSortedPostingsByFrequency-> start method");
+        return lemmas.stream()
+                .map(lemma -> postings.getOrDefault(lemma, Postings.EMPTY))
+                .filter(posting -> !posting.isEmpty())
+                .sorted(Comparator.comparingInt(Postings::size))
+                .toList();
     }
 
     /**
-     * Поиск всех лемм по выражению к привязки к сайтам
+     * Поиск всех лемм и фраз в кавычках в искомом выражении
      *
-     * @param query          икомое выражение
-     * @param siteEntities   сайты на которых искать
-     * @param lemmaFinder    сервис для поиска лемм
-     * @param lemmaFinderEng сервис для поиска лемм
-     * @return список всех лемм
-     * @throws IOException
+     * @param query икомое выражение
+     * @return набор уникальных лемм запроса и фразы
      */
-    private List<LemmaEntity> getAllLemmaByQuery(String query, List<SiteEntity> siteEntities, LemmaFinder lemmaFinder, LemmaFinder lemmaFinderEng) throws IOException {
-        log.info("getAllLemmaByQuery-> start method search lemma by query");
-        Set<String> lemmaSet = lemmaFinder.getRusLemmaSet(query);
-        lemmaSet.addAll(lemmaFinderEng.getEngLemmaSet(query));
-        List<LemmaEntity> allLemmas = new ArrayList<>();
-        for (String lemma : lemmaSet) {
-            for (SiteEntity siteEntity : siteEntities) {
-                LemmaEntity lemmaEntity = lemmaRepositories.findBySiteIdAndLemma(siteEntity.getId(), lemma);
-                if (lemmaEntity != null) {
-                    allLemmas.add(lemmaEntity);
-                }
-            }
-        }
-
-        return allLemmas;
+    private SearchQuery parseQuery(String query) {
+        log.info("parseQuery-> start method search lemma by query");
+        return queryParser.parse(query);
     }
 
     /**
@@ -4,7 +4,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
+import searchengine.dto.statistics.CacheStatisticsItem;
 import searchengine.dto.statistics.DetailedStatisticsItem;
+import searchengine.dto.statistics.HostRateStatisticsItem;
 import searchengine.dto.statistics.StatisticsData;
 import searchengine.dto.statistics.StatisticsResponse;
 import searchengine.dto.statistics.TotalStatistics;
@@ -12,7 +14,13 @@ import searchengine.model.SiteEntity;
 import searchengine.repositories.LemmaRepositories;
 import searchengine.repositories.PageRepositories;
 import searchengine.repositories.SiteRepositories;
+import searchengine.services.Lemmatizer;
+import searchengine.services.cache.BoundedCache;
+import searchengine.services.crawlingpages.HostRateLimiter;
+import searchengine.services.crawlingpages.RobotsCache;
 import searchengine.services.interfaces.StatisticsService;
+import searchengine.services.searchindex.QueryCache;
+import searchengine.services.searchindex.SearchCursors;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,6 +33,11 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final PageRepositories pageRepositories;
     private final SiteRepositories siteRepositories;
     private final LemmaRepositories lemmaRepositories;
+    private final Lemmatizer lemmatizer;
+    private final QueryCache queryCache;
+    private final SearchCursors searchCursors;
+    private final HostRateLimiter hostRateLimiter;
+    private final RobotsCache robotsCache;
 
     private final Random random = new Random();
     private final SitesList sites;
@@ -50,8 +63,8 @@ public class StatisticsServiceImpl implements StatisticsService {
             item.setName(site.getName());
             item.setUrl(site.getUrl());
             SiteEntity siteEntity =siteRepositories.findByUrl(site.getUrl());
-            int pages = (int) pageRepositories.findAllBySiteId(siteEntity.getId()).stream().count();
-            int lemmas = (int) lemmaRepositories.findBySiteId(siteEntity.getId()).stream().count();
+            int pages = pageRepositories.countBySiteId(siteEntity.getId());
+            int lemmas = lemmaRepositories.countBySiteId(siteEntity.getId());
             item.setPages(pages);
             item.setLemmas(lemmas);
             item.setStatus(siteEntity.getStatus());
@@ -66,8 +79,53 @@ public class StatisticsServiceImpl implements StatisticsService {
         StatisticsData data = new StatisticsData();
         data.setTotal(total);
         data.setDetailed(detailed);
+        data.setCaches(getCachesStatistics());
+        data.setHosts(getHostRatesStatistics());
         response.setStatistics(data);
         response.setResult(true);
         return response;
     }
+
+    /**
+     * @return размер и попадания в кэши, чтобы подбирать их размер
+     */
+    private List<CacheStatisticsItem> getCachesStatistics() {
+        List<CacheStatisticsItem> caches = new ArrayList<>();
+        for (BoundedCache<?, ?> cache : lemmatizer.getWordFormCaches()) {
+            caches.add(toCacheStatisticsItem(cache));
+        }
+        caches.add(toCacheStatisticsItem(queryCache.getCache()));
+        caches.add(toCacheStatisticsItem(searchCursors.getCache()));
+        caches.add(toCacheStatisticsItem(robotsCache.getCache()));
+        return caches;
+    }
+
+    /**
+     * @return текущая скорость обхода каждого хоста, подобранная HostRateLimiter
+     */
+    private List<HostRateStatisticsItem> getHostRatesStatistics() {
+        List<HostRateStatisticsItem> hosts = new ArrayList<>();
+        for (HostRateLimiter.HostRateView rate : hostRateLimiter.getRates()) {
+            HostRateStatisticsItem item = new HostRateStatisticsItem();
+            item.setHost(rate.host());
+            item.setRate(Math.round(rate.rate() * 100) / 100.0);
+            item.setMaxRate(Math.round(rate.maxRate() * 100) / 100.0);
+            item.setLatency(Math.round(rate.latencyMillis()));
+            item.setBackoffs(rate.backoffs());
+            item.setRetryAfter(rate.retryAfterMillis());
+            hosts.add(item);
+        }
+        return hosts;
+    }
+
+    private static CacheStatisticsItem toCacheStatisticsItem(BoundedCache<?, ?> cache) {
+        CacheStatisticsItem item = new CacheStatisticsItem();
+        item.setName(cache.getName());
+        item.setSize(cache.size());
+        item.setMaxSize(cache.getMaxSize());
+        item.setHits(cache.getHits());
+        item.setMisses(cache.getMisses());
+        item.setHitRatio(cache.getHitRatio());
+        return item;
+    }
 }
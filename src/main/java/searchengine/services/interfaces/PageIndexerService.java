@@ -7,9 +7,9 @@ import java.io.IOException;
 public interface PageIndexerService {
     /**
      *
-     * @param html новый контент переиндексируемой страницы
+     * @param text новый текст переиндексируемой страницы без разметки
      * @param refreshPage существующая в БД страница, которая переиндексируется
      * @throws IOException
      */
-    void refreshIndex(String html, PageEntity refreshPage) throws IOException;
+    void refreshIndex(String text, PageEntity refreshPage) throws IOException;
 }
@@ -5,5 +5,17 @@ import searchengine.dto.search.SearchResponse;
 import java.io.IOException;
 
 public interface SearchService {
-    SearchResponse search(String query, String site, int offset, int limit) throws IOException;
+    /**
+     * @param facets добавить в ответ количество найденных страниц по каждому сайту
+     */
+    SearchResponse search(String query, String site, int offset, int limit, boolean facets) throws IOException;
+
+    /**
+     * Следующее окно выдачи по курсору из предыдущего ответа без повторного ранжирования
+     * @param cursor курсор из поля nextCursor
+     * @param limit  размер окна
+     * @param facets добавить в ответ количество найденных страниц по каждому сайту
+     * @return ответ поиска или ошибка, если курсор истек или индекс сайтов изменился
+     */
+    SearchResponse searchByCursor(String cursor, int limit, boolean facets);
 }
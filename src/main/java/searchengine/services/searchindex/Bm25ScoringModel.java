@@ -0,0 +1,40 @@
+package searchengine.services.searchindex;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * BM25: частота леммы на странице с насыщением и поправкой на длину страницы, умноженная на редкость леммы на сайте
+ */
+@Component("bm25")
+public class Bm25ScoringModel implements ScoringModel {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    @Override
+    public String getRankingVersion() {
+        return "bm25-1";
+    }
+
+    @Override
+    public float score(int rank, int documentFreq, int pageLength, SiteStatistics siteStatistics) {
+        float averageLength = siteStatistics.getAverageLength();
+        float lengthNorm = pageLength < 0 || averageLength == 0 ? 1 : pageLength / averageLength;
+        return idf(documentFreq, siteStatistics) * rank * (K1 + 1) / (rank + K1 * (1 - B + B * lengthNorm));
+    }
+
+    /**
+     * Вклад растет с rank и падает с длиной страницы, поэтому граница берется для максимального rank и нулевой длины
+     */
+    @Override
+    public float upperBound(int maxRank, int documentFreq, SiteStatistics siteStatistics) {
+        return idf(documentFreq, siteStatistics) * maxRank * (K1 + 1) / (maxRank + K1 * (1 - B));
+    }
+
+    /**
+     * Пока статистика сайта не загружена, количество страниц сайта не меньше количества страниц с леммой
+     */
+    private static float idf(int documentFreq, SiteStatistics siteStatistics) {
+        int documentCount = Math.max(siteStatistics.getDocumentCount(), documentFreq);
+        return (float) Math.log(1 + (documentCount - documentFreq + 0.5) / (documentFreq + 0.5));
+    }
+}
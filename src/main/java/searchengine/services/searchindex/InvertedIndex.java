@@ -0,0 +1,268 @@
+package searchengine.services.searchindex;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import searchengine.model.SiteEntity;
+import searchengine.repositories.IndexRepositories;
+import searchengine.repositories.LemmaRepositories;
+import searchengine.repositories.SiteRepositories;
+import searchengine.repositories.projections.IndexView;
+import searchengine.repositories.projections.LemmaView;
+import searchengine.repositories.projections.PostingView;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Обратный индекс в памяти: сайт -> лемма -> отсортированные id страниц с rank.
+ * Загружается из таблиц lemma/index_page при старте и обновляется при индексации страниц,
+ * поэтому поиску не нужно ходить в БД за леммами и связками. Сайты, индекс которых не загрузился,
+ * ищутся по БД, пока не будут проиндексированы заново.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class InvertedIndex {
+    private final SiteRepositories siteRepositories;
+    private final LemmaRepositories lemmaRepositories;
+    private final IndexRepositories indexRepositories;
+    private final TransactionTemplate transactionTemplate;
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<String, PostingList>> sites = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, SiteStatistics> statistics = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+    /**
+     * Сайты, индекс которых не загрузился при старте, поиск по ним идет через БД
+     */
+    private final Set<Integer> unloadedSites = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready = false;
+
+    /**
+     * Загрузка индекса всех сайтов из БД после старта приложения. Ошибка загрузки сайта не останавливает загрузку
+     * остальных: сайт с ошибкой ищется через БД. Если не удалось получить даже список сайтов, весь поиск идет через БД
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        log.info("load-> Start loading inverted index");
+        long start = System.currentTimeMillis();
+        List<SiteEntity> siteEntities;
+        try {
+            siteEntities = siteRepositories.findAll();
+        } catch (RuntimeException e) {
+            log.error("load<- Inverted index is not loaded, search falls back to DB: {}", e.getMessage());
+            return;
+        }
+        long postingsCount = 0;
+        try {
+            for (SiteEntity siteEntity : siteEntities) {
+                try {
+                    postingsCount += loadSite(siteEntity.getId());
+                } catch (RuntimeException e) {
+                    sites.remove(siteEntity.getId());
+                    statistics.remove(siteEntity.getId());
+                    unloadedSites.add(siteEntity.getId());
+                    log.error("load-> Index of site {} is not loaded, site search falls back to DB: {}",
+                            siteEntity.getUrl(), e.getMessage());
+                }
+            }
+        } finally {
+            ready = true;
+            log.info("load<- Inverted index loaded: sites {}, not loaded {}, postings {}, {} ms", sites.size(),
+                    unloadedSites.size(), postingsCount, System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Читает связки сайта потоком внутри транзакции, в памяти держатся только списки страниц
+     * @param siteId id сайта
+     * @return количество загруженных связок
+     */
+    private long loadSite(int siteId) {
+        ConcurrentHashMap<String, PostingList> lemmas = getSiteLemmas(siteId);
+        Map<Integer, Integer> pageLengths = new HashMap<>();
+        long[] postingsCount = {0};
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<PostingView> postings = indexRepositories.streamPostingsBySiteId(siteId)) {
+                postings.forEach(posting -> {
+                    lemmas.computeIfAbsent(posting.getLemma(), lemma -> new PostingList())
+                            .put(posting.getPageId(), posting.getLemmaRank());
+                    pageLengths.merge(posting.getPageId(), posting.getLemmaRank(), Integer::sum);
+                    postingsCount[0]++;
+                });
+            }
+        });
+        SiteStatistics siteStatistics = getSiteStatistics(siteId);
+        pageLengths.forEach(siteStatistics::putPage);
+        return postingsCount[0];
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Поколение индекса сайта увеличивается при каждом изменении его страниц, по нему сбрасывается кэш запросов
+     * @param siteId id сайта
+     * @return текущее поколение индекса сайта
+     */
+    public long getGeneration(int siteId) {
+        AtomicLong generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    private void nextGeneration(int siteId) {
+        generations.computeIfAbsent(siteId, id -> new AtomicLong()).incrementAndGet();
+    }
+
+    /**
+     * Добавляет леммы проиндексированной страницы в индекс
+     * @param siteId id сайта
+     * @param pageId id страницы
+     * @param lemmas Map лемм и их количества на странице
+     */
+    public void addPage(int siteId, int pageId, Map<String, Integer> lemmas) {
+        ConcurrentHashMap<String, PostingList> siteLemmas = getSiteLemmas(siteId);
+        for (Map.Entry<String, Integer> lemma : lemmas.entrySet()) {
+            siteLemmas.computeIfAbsent(lemma.getKey(), key -> new PostingList()).put(pageId, lemma.getValue());
+        }
+        getSiteStatistics(siteId).putPage(pageId, lemmas.values().stream().mapToInt(Integer::intValue).sum());
+        nextGeneration(siteId);
+    }
+
+    /**
+     * Заменяет леммы переиндексированной страницы. Сначала страница добавляется в списки новых лемм или получает
+     * новый rank, потом удаляется из списков лемм, которых на ней больше нет, поэтому параллельный поиск
+     * не увидит страницу пропавшей из списков, в которых она остается. Затрагиваются только списки лемм этой страницы
+     * @param siteId    id сайта
+     * @param pageId    id страницы
+     * @param oldLemmas леммы страницы до переиндексации
+     * @param lemmas    Map лемм и их количества на странице после переиндексации
+     */
+    public void replacePage(int siteId, int pageId, Collection<String> oldLemmas, Map<String, Integer> lemmas) {
+        ConcurrentHashMap<String, PostingList> siteLemmas = getSiteLemmas(siteId);
+        for (Map.Entry<String, Integer> lemma : lemmas.entrySet()) {
+            siteLemmas.computeIfAbsent(lemma.getKey(), key -> new PostingList()).put(pageId, lemma.getValue());
+        }
+        for (String oldLemma : oldLemmas) {
+            PostingList postingList = siteLemmas.get(oldLemma);
+            if (postingList != null && !lemmas.containsKey(oldLemma)) {
+                postingList.remove(pageId);
+            }
+        }
+        getSiteStatistics(siteId).putPage(pageId, lemmas.values().stream().mapToInt(Integer::intValue).sum());
+        nextGeneration(siteId);
+    }
+
+    /**
+     * Удаляет весь индекс сайта, используется при полной переиндексации
+     * @param siteId id сайта
+     */
+    public void removeSite(int siteId) {
+        sites.remove(siteId);
+        statistics.remove(siteId);
+        unloadedSites.remove(siteId);
+        nextGeneration(siteId);
+    }
+
+    /**
+     * Списки страниц по леммам запроса для выбранных сайтов. Пока индекс не загружен,
+     * списки всех сайтов читаются из БД двумя запросами и группируются по сайтам в памяти,
+     * после загрузки из БД читаются только сайты, индекс которых не загрузился.
+     * @param siteIds id сайтов, по которым идет поиск
+     * @param lemmas  леммы запроса
+     * @return Map id сайта -> (лемма -> список страниц), для отсутствующих на сайте лемм пустой список
+     */
+    public Map<Integer, Map<String, Postings>> getPostings(Collection<Integer> siteIds, Set<String> lemmas) {
+        Map<Integer, Map<String, Postings>> postings = new HashMap<>();
+        for (Integer siteId : siteIds) {
+            Map<String, Postings> sitePostings = new HashMap<>();
+            lemmas.forEach(lemma -> sitePostings.put(lemma, Postings.EMPTY));
+            postings.put(siteId, sitePostings);
+        }
+        if (siteIds.isEmpty() || lemmas.isEmpty()) {
+            return postings;
+        }
+        if (!ready) {
+            fillPostingsFromDb(siteIds, lemmas, postings);
+            return postings;
+        }
+        List<Integer> dbSiteIds = siteIds.stream().filter(unloadedSites::contains).toList();
+        if (!dbSiteIds.isEmpty()) {
+            fillPostingsFromDb(dbSiteIds, lemmas, postings);
+        }
+        for (Integer siteId : siteIds) {
+            ConcurrentHashMap<String, PostingList> siteLemmas = sites.get(siteId);
+            if (siteLemmas == null || unloadedSites.contains(siteId)) {
+                continue;
+            }
+            for (String lemma : lemmas) {
+                PostingList postingList = siteLemmas.get(lemma);
+                if (postingList != null) {
+                    postings.get(siteId).put(lemma, postingList.snapshot());
+                }
+            }
+        }
+        return postings;
+    }
+
+    /**
+     * @param siteId id сайта
+     * @return количество страниц и их длины для формулы релевантности, пустая статистика если индекс сайта не загружен
+     */
+    public SiteStatistics getStatistics(int siteId) {
+        return statistics.getOrDefault(siteId, SiteStatistics.EMPTY);
+    }
+
+    private SiteStatistics getSiteStatistics(int siteId) {
+        return statistics.computeIfAbsent(siteId, id -> new SiteStatistics());
+    }
+
+    private ConcurrentHashMap<String, PostingList> getSiteLemmas(int siteId) {
+        return sites.computeIfAbsent(siteId, id -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Одним запросом находит леммы запроса на всех сайтах, вторым - их связки со страницами
+     * @param siteIds  id сайтов
+     * @param lemmas   леммы запроса
+     * @param postings Map, в которую раскладываются найденные списки по сайтам
+     */
+    private void fillPostingsFromDb(Collection<Integer> siteIds, Set<String> lemmas, Map<Integer, Map<String, Postings>> postings) {
+        Map<Integer, LemmaView> lemmaViews = new HashMap<>();
+        for (LemmaView lemmaView : lemmaRepositories.findBySiteIdsAndLemmas(siteIds, lemmas)) {
+            lemmaViews.put(lemmaView.getId(), lemmaView);
+        }
+        if (lemmaViews.isEmpty()) {
+            return;
+        }
+        Map<Integer, List<IndexView>> indexViewsByLemmaId = new HashMap<>();
+        for (IndexView indexView : indexRepositories.findViewsByLemmaIds(lemmaViews.keySet())) {
+            indexViewsByLemmaId.computeIfAbsent(indexView.getLemmaId(), id -> new ArrayList<>()).add(indexView);
+        }
+        for (Map.Entry<Integer, List<IndexView>> entry : indexViewsByLemmaId.entrySet()) {
+            LemmaView lemmaView = lemmaViews.get(entry.getKey());
+            postings.get(lemmaView.getSiteId()).put(lemmaView.getLemma(), toPostings(entry.getValue()));
+        }
+    }
+
+    /**
+     * @param indexViews связки леммы со страницами, отсортированные по id страницы
+     * @return список страниц леммы
+     */
+    private static Postings toPostings(List<IndexView> indexViews) {
+        int[] pageIds = new int[indexViews.size()];
+        int[] ranks = new int[indexViews.size()];
+        int maxRank = 0;
+        for (int i = 0; i < indexViews.size(); i++) {
+            pageIds[i] = indexViews.get(i).getPageId();
+            ranks[i] = indexViews.get(i).getLemmaRank();
+            maxRank = Math.max(maxRank, ranks[i]);
+        }
+        return new Postings(pageIds, ranks, pageIds.length, maxRank, PageBitmap.of(pageIds, pageIds.length));
+    }
+}
@@ -0,0 +1,381 @@
+package searchengine.services.searchindex;
+
+import java.util.Arrays;
+
+/**
+ * Сжатое множество id страниц по схеме Roaring: id делятся по старшим 16 битам на блоки,
+ * блок хранится отсортированным массивом младших 16 бит, пока в нем не больше 4096 страниц, иначе - битовой картой на 65536 бит.
+ * Операции И / ИЛИ / И-НЕ идут поблочно, поэтому стоимость пропорциональна сжатому размеру, а не количеству страниц.
+ * Неизменяемое, операции возвращают новое множество.
+ */
+public final class PageBitmap {
+    private static final int ARRAY_MAX_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    public static final PageBitmap EMPTY = new PageBitmap(new char[0], new Container[0]);
+
+    private final char[] keys;
+    private final Container[] containers;
+    private final int cardinality;
+
+    private sealed interface Container permits ArrayContainer, BitmapContainer {
+        int cardinality();
+    }
+
+    /**
+     * @param values отсортированные младшие 16 бит id страниц
+     */
+    private record ArrayContainer(char[] values) implements Container {
+        @Override
+        public int cardinality() {
+            return values.length;
+        }
+    }
+
+    /**
+     * @param words       битовая карта на 65536 бит
+     * @param cardinality количество установленных бит
+     */
+    private record BitmapContainer(long[] words, int cardinality) implements Container {
+        private boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+    }
+
+    private PageBitmap(char[] keys, Container[] containers) {
+        this.keys = keys;
+        this.containers = containers;
+        int count = 0;
+        for (Container container : containers) {
+            count += container.cardinality();
+        }
+        this.cardinality = count;
+    }
+
+    /**
+     * @param pageIds отсортированные по возрастанию неотрицательные id страниц
+     * @param size    сколько первых элементов массива взять
+     * @return множество страниц
+     */
+    public static PageBitmap of(int[] pageIds, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        char[] keys = new char[size];
+        Container[] containers = new Container[size];
+        int count = 0;
+        int from = 0;
+        while (from < size) {
+            int key = pageIds[from] >>> 16;
+            int to = from + 1;
+            while (to < size && pageIds[to] >>> 16 == key) {
+                to++;
+            }
+            char[] values = new char[to - from];
+            for (int i = from; i < to; i++) {
+                values[i - from] = (char) pageIds[i];
+            }
+            keys[count] = (char) key;
+            containers[count++] = values.length > ARRAY_MAX_SIZE ? toBitmap(values) : new ArrayContainer(values);
+            from = to;
+        }
+        return create(keys, containers, count);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * @return страницы, которые есть в обоих множествах
+     */
+    public PageBitmap and(PageBitmap other) {
+        int length = Math.min(keys.length, other.keys.length);
+        char[] resultKeys = new char[length];
+        Container[] result = new Container[length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container container = and(containers[i], other.containers[j]);
+                if (container != null) {
+                    resultKeys[count] = keys[i];
+                    result[count++] = container;
+                }
+                i++;
+                j++;
+            }
+        }
+        return create(resultKeys, result, count);
+    }
+
+    /**
+     * @return страницы, которые есть хотя бы в одном из множеств
+     */
+    public PageBitmap or(PageBitmap other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        char[] resultKeys = new char[keys.length + other.keys.length];
+        Container[] result = new Container[resultKeys.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                resultKeys[count] = keys[i];
+                result[count++] = containers[i++];
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                resultKeys[count] = other.keys[j];
+                result[count++] = other.containers[j++];
+            } else {
+                resultKeys[count] = keys[i];
+                result[count++] = or(containers[i++], other.containers[j++]);
+            }
+        }
+        return create(resultKeys, result, count);
+    }
+
+    /**
+     * @return страницы этого множества, которых нет в другом
+     */
+    public PageBitmap andNot(PageBitmap other) {
+        if (isEmpty() || other.isEmpty()) {
+            return this;
+        }
+        char[] resultKeys = new char[keys.length];
+        Container[] result = new Container[keys.length];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = j < other.keys.length && other.keys[j] == keys[i]
+                    ? andNot(containers[i], other.containers[j]) : containers[i];
+            if (container != null) {
+                resultKeys[count] = keys[i];
+                result[count++] = container;
+            }
+        }
+        return create(resultKeys, result, count);
+    }
+
+    /**
+     * @return id страниц по возрастанию
+     */
+    public int[] toArray() {
+        int[] pageIds = new int[cardinality];
+        int index = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof ArrayContainer array) {
+                for (char value : array.values()) {
+                    pageIds[index++] = high | value;
+                }
+            } else {
+                long[] words = ((BitmapContainer) containers[i]).words();
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        pageIds[index++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return pageIds;
+    }
+
+    private static PageBitmap create(char[] keys, Container[] containers, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        return new PageBitmap(count == keys.length ? keys : Arrays.copyOf(keys, count),
+                count == containers.length ? containers : Arrays.copyOf(containers, count));
+    }
+
+    private static Container and(Container first, Container second) {
+        if (first instanceof ArrayContainer array) {
+            return second instanceof ArrayContainer other
+                    ? intersect(array.values(), other.values())
+                    : filter(array.values(), (BitmapContainer) second, true);
+        }
+        if (second instanceof ArrayContainer array) {
+            return filter(array.values(), (BitmapContainer) first, true);
+        }
+        long[] words = ((BitmapContainer) first).words().clone();
+        long[] otherWords = ((BitmapContainer) second).words();
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            words[w] &= otherWords[w];
+        }
+        return fromWords(words);
+    }
+
+    private static Container or(Container first, Container second) {
+        if (first instanceof ArrayContainer array && second instanceof ArrayContainer other) {
+            char[] values = union(array.values(), other.values());
+            return values.length > ARRAY_MAX_SIZE ? toBitmap(values) : new ArrayContainer(values);
+        }
+        if (first instanceof ArrayContainer array) {
+            return addAll((BitmapContainer) second, array.values());
+        }
+        if (second instanceof ArrayContainer array) {
+            return addAll((BitmapContainer) first, array.values());
+        }
+        long[] words = ((BitmapContainer) first).words().clone();
+        long[] otherWords = ((BitmapContainer) second).words();
+        int cardinality = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            words[w] |= otherWords[w];
+            cardinality += Long.bitCount(words[w]);
+        }
+        return new BitmapContainer(words, cardinality);
+    }
+
+    private static Container andNot(Container first, Container second) {
+        if (first instanceof ArrayContainer array) {
+            return second instanceof ArrayContainer other
+                    ? subtract(array.values(), other.values())
+                    : filter(array.values(), (BitmapContainer) second, false);
+        }
+        long[] words = ((BitmapContainer) first).words().clone();
+        if (second instanceof ArrayContainer array) {
+            for (char value : array.values()) {
+                words[value >>> 6] &= ~(1L << value);
+            }
+        } else {
+            long[] otherWords = ((BitmapContainer) second).words();
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] &= ~otherWords[w];
+            }
+        }
+        return fromWords(words);
+    }
+
+    /**
+     * @return значения массива, бит которых в карте равен keep, или null, если таких нет
+     */
+    private static Container filter(char[] values, BitmapContainer bitmap, boolean keep) {
+        char[] result = new char[values.length];
+        int count = 0;
+        for (char value : values) {
+            if (bitmap.contains(value) == keep) {
+                result[count++] = value;
+            }
+        }
+        return count == 0 ? null : new ArrayContainer(Arrays.copyOf(result, count));
+    }
+
+    private static Container intersect(char[] first, char[] second) {
+        char[] result = new char[Math.min(first.length, second.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return count == 0 ? null : new ArrayContainer(Arrays.copyOf(result, count));
+    }
+
+    private static Container subtract(char[] first, char[] second) {
+        char[] result = new char[first.length];
+        int count = 0;
+        int j = 0;
+        for (char value : first) {
+            while (j < second.length && second[j] < value) {
+                j++;
+            }
+            if (j == second.length || second[j] != value) {
+                result[count++] = value;
+            }
+        }
+        return count == 0 ? null : new ArrayContainer(Arrays.copyOf(result, count));
+    }
+
+    private static char[] union(char[] first, char[] second) {
+        char[] result = new char[first.length + second.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j])) {
+                result[count++] = first[i++];
+            } else if (i == first.length || first[i] > second[j]) {
+                result[count++] = second[j++];
+            } else {
+                result[count++] = first[i++];
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static BitmapContainer addAll(BitmapContainer bitmap, char[] values) {
+        long[] words = bitmap.words().clone();
+        int cardinality = bitmap.cardinality();
+        for (char value : values) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+        }
+        return new BitmapContainer(words, cardinality);
+    }
+
+    private static BitmapContainer toBitmap(char[] values) {
+        long[] words = new long[BITMAP_WORDS];
+        for (char value : values) {
+            words[value >>> 6] |= 1L << value;
+        }
+        return new BitmapContainer(words, values.length);
+    }
+
+    /**
+     * После вычитания или пересечения маленькая карта переводится обратно в массив
+     * @return блок или null, если в карте не осталось бит
+     */
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        if (cardinality == 0) {
+            return null;
+        }
+        if (cardinality > ARRAY_MAX_SIZE) {
+            return new BitmapContainer(words, cardinality);
+        }
+        char[] values = new char[cardinality];
+        int count = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(values);
+    }
+}
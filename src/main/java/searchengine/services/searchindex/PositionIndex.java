@@ -0,0 +1,126 @@
+package searchengine.services.searchindex;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import searchengine.config.CrawlSettings;
+import searchengine.repositories.IndexRepositories;
+import searchengine.repositories.projections.PositionsView;
+
+import java.util.*;
+
+/**
+ * Чтение позиций лемм из index_page: для сниппетов страниц окна выдачи и для проверки фраз из кавычек.
+ * Позиции хранятся только для страниц, проиндексированных с crawl-settings.store-positions. Если настройка
+ * выключена, в БД не ходим: сниппеты строятся по тексту страницы, а фраза в кавычках ищется как обычное
+ * пересечение ее слов, без проверки, что слова идут подряд.
+ */
+@Component
+@RequiredArgsConstructor
+public class PositionIndex {
+    private static final int PAGE_IDS_CHUNK_SIZE = 1000;
+
+    private final IndexRepositories indexRepositories;
+    private final CrawlSettings crawlSettings;
+
+    /**
+     * @return хранятся ли позиции, то есть есть ли смысл их читать и проверять фразы
+     */
+    public boolean isEnabled() {
+        return crawlSettings.isStorePositions();
+    }
+
+    /**
+     * @param pageIds id страниц
+     * @param lemmas  леммы
+     * @return Map id страницы -> (лемма -> закодированные позиции), страниц без позиций в результате нет
+     */
+    public Map<Integer, Map<String, byte[]>> getPositions(List<Integer> pageIds, Collection<String> lemmas) {
+        Map<Integer, Map<String, byte[]>> positions = new HashMap<>();
+        if (!isEnabled() || pageIds.isEmpty() || lemmas.isEmpty()) {
+            return positions;
+        }
+        for (int from = 0; from < pageIds.size(); from += PAGE_IDS_CHUNK_SIZE) {
+            List<Integer> chunk = pageIds.subList(from, Math.min(from + PAGE_IDS_CHUNK_SIZE, pageIds.size()));
+            for (PositionsView view : indexRepositories.findPositions(chunk, lemmas)) {
+                positions.computeIfAbsent(view.getPageId(), id -> new HashMap<>()).put(view.getLemma(), view.getPositions());
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Оставляет страницы, на которых слова каждой фразы идут подряд.
+     * Страницы, проиндексированные без позиций, проверить нельзя, они остаются в результате.
+     * При выключенных позициях страницы не проверяются.
+     *
+     * @param candidates отсортированные id страниц, содержащих все леммы запроса
+     * @param phrases    фразы запроса
+     * @return отсортированные id подходящих страниц
+     */
+    public int[] filterPhrases(int[] candidates, List<SearchQuery.Phrase> phrases) {
+        if (!isEnabled() || phrases.isEmpty() || candidates.length == 0) {
+            return candidates;
+        }
+        Set<String> lemmas = new HashSet<>();
+        phrases.forEach(phrase -> phrase.terms().forEach(term -> lemmas.addAll(term.lemmas())));
+        Map<Integer, Map<String, byte[]>> positions = getPositions(Arrays.stream(candidates).boxed().toList(), lemmas);
+        int kept = 0;
+        int[] result = new int[candidates.length];
+        for (int pageId : candidates) {
+            Map<String, byte[]> pagePositions = positions.get(pageId);
+            if (pagePositions == null || phrases.stream().allMatch(phrase -> containsPhrase(pagePositions, phrase))) {
+                result[kept++] = pageId;
+            }
+        }
+        return Arrays.copyOf(result, kept);
+    }
+
+    /**
+     * Фраза найдена, если от какого-то номера слова p каждое слово фразы стоит на позиции p + offset
+     */
+    private static boolean containsPhrase(Map<String, byte[]> pagePositions, SearchQuery.Phrase phrase) {
+        List<int[]> termOrdinals = new ArrayList<>();
+        for (SearchQuery.PhraseTerm term : phrase.terms()) {
+            int[] ordinals = getTermOrdinals(pagePositions, term);
+            if (ordinals == null) {
+                return true;
+            }
+            termOrdinals.add(ordinals);
+        }
+        SearchQuery.PhraseTerm first = phrase.terms().get(0);
+        for (int ordinal : termOrdinals.get(0)) {
+            int base = ordinal - first.offset();
+            boolean matched = true;
+            for (int i = 1; i < termOrdinals.size() && matched; i++) {
+                matched = Arrays.binarySearch(termOrdinals.get(i), base + phrase.terms().get(i).offset()) >= 0;
+            }
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return отсортированные номера слов по всем леммам слова фразы или null, если позиций у страницы нет
+     */
+    private static int[] getTermOrdinals(Map<String, byte[]> pagePositions, SearchQuery.PhraseTerm term) {
+        int[] ordinals = null;
+        for (String lemma : term.lemmas()) {
+            byte[] data = pagePositions.get(lemma);
+            if (data == null) {
+                continue;
+            }
+            int[] lemmaOrdinals = TokenPositions.decodeOrdinals(data);
+            if (ordinals == null) {
+                ordinals = lemmaOrdinals;
+            } else {
+                int[] merged = Arrays.copyOf(ordinals, ordinals.length + lemmaOrdinals.length);
+                System.arraycopy(lemmaOrdinals, 0, merged, ordinals.length, lemmaOrdinals.length);
+                Arrays.sort(merged);
+                ordinals = merged;
+            }
+        }
+        return ordinals;
+    }
+}
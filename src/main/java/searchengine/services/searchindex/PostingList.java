@@ -0,0 +1,107 @@
+package searchengine.services.searchindex;
+
+import java.util.Arrays;
+
+/**
+ * Список страниц по одной лемме одного сайта в примитивных массивах.
+ * Запись синхронизирована, чтение идет через {@link #snapshot()} без блокировок на время поиска:
+ * добавление в конец пишет за пределы уже выданных срезов, а вставка, удаление и обновление rank копируют массивы.
+ */
+public class PostingList {
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] pageIds = new int[INITIAL_CAPACITY];
+    private int[] ranks = new int[INITIAL_CAPACITY];
+    private int size;
+    /**
+     * Максимальный rank за все время, после удаления страниц остается верхней границей
+     */
+    private int maxRank;
+    /**
+     * Сжатое множество страниц списка, строится при первом срезе после изменения состава страниц
+     */
+    private PageBitmap bitmap;
+
+    /**
+     * Добавляет страницу в список или обновляет rank, если страница уже есть
+     * @param pageId id страницы
+     * @param rank   количество лемм на странице
+     */
+    public synchronized void put(int pageId, int rank) {
+        maxRank = Math.max(maxRank, rank);
+        if (size == 0 || pageIds[size - 1] < pageId) {
+            if (size == pageIds.length) {
+                int capacity = pageIds.length + (pageIds.length >> 1) + 1;
+                pageIds = Arrays.copyOf(pageIds, capacity);
+                ranks = Arrays.copyOf(ranks, capacity);
+            }
+            pageIds[size] = pageId;
+            ranks[size] = rank;
+            size++;
+            bitmap = null;
+            return;
+        }
+        int index = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (index >= 0) {
+            if (ranks[index] != rank) {
+                int[] newRanks = Arrays.copyOf(ranks, ranks.length);
+                newRanks[index] = rank;
+                ranks = newRanks;
+            }
+            return;
+        }
+        int insertion = -index - 1;
+        int[] newPageIds = new int[Math.max(size + 1, pageIds.length)];
+        int[] newRanks = new int[newPageIds.length];
+        System.arraycopy(pageIds, 0, newPageIds, 0, insertion);
+        System.arraycopy(ranks, 0, newRanks, 0, insertion);
+        newPageIds[insertion] = pageId;
+        newRanks[insertion] = rank;
+        System.arraycopy(pageIds, insertion, newPageIds, insertion + 1, size - insertion);
+        System.arraycopy(ranks, insertion, newRanks, insertion + 1, size - insertion);
+        pageIds = newPageIds;
+        ranks = newRanks;
+        size++;
+        bitmap = null;
+    }
+
+    /**
+     * Удаляет страницу из списка
+     * @param pageId id страницы
+     * @return была ли страница в списке
+     */
+    public synchronized boolean remove(int pageId) {
+        int index = Arrays.binarySearch(pageIds, 0, size, pageId);
+        if (index < 0) {
+            return false;
+        }
+        int[] newPageIds = new int[pageIds.length];
+        int[] newRanks = new int[ranks.length];
+        System.arraycopy(pageIds, 0, newPageIds, 0, index);
+        System.arraycopy(ranks, 0, newRanks, 0, index);
+        System.arraycopy(pageIds, index + 1, newPageIds, index, size - index - 1);
+        System.arraycopy(ranks, index + 1, newRanks, index, size - index - 1);
+        pageIds = newPageIds;
+        ranks = newRanks;
+        size--;
+        bitmap = null;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return срез списка на текущий момент, последующие изменения на него не влияют
+     */
+    public synchronized Postings snapshot() {
+        if (size == 0) {
+            return Postings.EMPTY;
+        }
+        if (bitmap == null) {
+            bitmap = PageBitmap.of(pageIds, size);
+        }
+        return new Postings(pageIds, ranks, size, maxRank, bitmap);
+    }
+}
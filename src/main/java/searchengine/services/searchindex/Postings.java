@@ -0,0 +1,37 @@
+package searchengine.services.searchindex;
+
+import java.util.Arrays;
+
+/**
+ * Неизменяемый срез списка страниц по лемме: отсортированные по возрастанию id страниц и rank леммы на каждой из них.
+ * Массивы могут быть длиннее size, читать можно только первые size элементов.
+ *
+ * @param pageIds id страниц, отсортированные по возрастанию
+ * @param ranks   rank леммы на странице с тем же индексом
+ * @param size    количество страниц в срезе
+ * @param maxRank верхняя граница rank в срезе, используется для оценки максимального вклада леммы
+ * @param bitmap  те же id страниц в сжатом множестве для операций И / ИЛИ / НЕ запроса
+ */
+public record Postings(int[] pageIds, int[] ranks, int size, int maxRank, PageBitmap bitmap) {
+    public static final Postings EMPTY = new Postings(new int[0], new int[0], 0, 0, PageBitmap.EMPTY);
+
+    public int pageId(int index) {
+        return pageIds[index];
+    }
+
+    public int rank(int index) {
+        return ranks[index];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param pageId id страницы
+     * @return индекс страницы в срезе или отрицательное значение, если страницы нет
+     */
+    public int indexOf(int pageId) {
+        return Arrays.binarySearch(pageIds, 0, size, pageId);
+    }
+}
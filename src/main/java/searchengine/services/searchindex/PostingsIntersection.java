@@ -0,0 +1,40 @@
+package searchengine.services.searchindex;
+
+import java.util.Arrays;
+
+/**
+ * Проход по спискам страниц кандидатов, найденных операциями над {@link PageBitmap}.
+ * Кандидаты идут по возрастанию id, поэтому поиск в каждом списке продолжается с прошлой позиции галопом
+ * (экспоненциальный шаг + бинарный поиск), и стоимость близка к количеству кандидатов, а не к длине списков.
+ */
+public class PostingsIntersection {
+
+    private PostingsIntersection() {
+        throw new RuntimeException("Disallow construct");
+    }
+
+    /**
+     * Галопом ищет первую позицию не меньше from, где id страницы не меньше искомого
+     * @param postings список страниц
+     * @param from     позиция, с которой начинается поиск
+     * @param pageId   искомый id страницы
+     * @return найденная позиция или size, если таких страниц нет
+     */
+    public static int gallop(Postings postings, int from, int pageId) {
+        int size = postings.size();
+        if (from >= size || postings.pageId(from) >= pageId) {
+            return from;
+        }
+        int low = from;
+        int step = 1;
+        int high = from + step;
+        while (high < size && postings.pageId(high) < pageId) {
+            low = high;
+            step <<= 1;
+            high = from + step;
+        }
+        high = Math.min(high, size);
+        int index = Arrays.binarySearch(postings.pageIds(), low + 1, high, pageId);
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -0,0 +1,82 @@
+package searchengine.services.searchindex;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.services.cache.BoundedCache;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Кэш результатов ранжирования запросов. Хранит id страниц по убыванию релевантности, а не готовый ответ,
+ * поэтому любое окно offset/limit одного запроса обслуживается одной записью.
+ * В ключ входят поколения индекса выбранных сайтов: после индексации сайта старые записи больше не находятся
+ * и вытесняются как давно не используемые.
+ */
+@Component
+public class QueryCache {
+    private final BoundedCache<Key, RankedPages> cache;
+    private final int depth;
+
+    /**
+     * @param groups         отсортированные группы лемм запроса, каждая группа тоже отсортирована
+     * @param excluded       отсортированные исключенные леммы
+     * @param phrases        фразы запроса
+     * @param siteIds        id сайтов, по которым идет поиск
+     * @param generations    поколения индекса этих сайтов
+     * @param rankingVersion версия формулы ранжирования
+     */
+    public record Key(List<List<String>> groups, List<String> excluded, List<SearchQuery.Phrase> phrases, List<Integer> siteIds, List<Long> generations, String rankingVersion) {
+    }
+
+    public QueryCache(SearchSettings searchSettings) {
+        this.cache = new BoundedCache<>("searchResults", searchSettings.getQueryCacheSize());
+        this.depth = searchSettings.getQueryCacheDepth();
+    }
+
+    /**
+     * @param searchQuery    разобранный запрос
+     * @param siteIds        id сайтов, по которым идет поиск
+     * @param generations    поколения индекса этих сайтов
+     * @param rankingVersion версия формулы ранжирования
+     * @return ключ кэша, не зависящий от порядка слов в запросе вне фраз
+     */
+    public Key createKey(SearchQuery searchQuery, List<Integer> siteIds, List<Long> generations, String rankingVersion) {
+        List<List<String>> groups = searchQuery.groups().stream()
+                .map(group -> group.stream().sorted().toList())
+                .sorted(Comparator.comparing(Object::toString))
+                .distinct()
+                .toList();
+        return new Key(groups, searchQuery.excluded().stream().sorted().toList(), List.copyOf(searchQuery.phrases()), List.copyOf(siteIds),
+                List.copyOf(generations), rankingVersion);
+    }
+
+    /**
+     * @param key   ключ запроса
+     * @param limit позиция после последней страницы запрошенного окна
+     * @return результат из кэша или null, если его нет или в нем меньше страниц, чем нужно для окна
+     */
+    public RankedPages get(Key key, int limit) {
+        RankedPages rankedPages = cache.get(key);
+        if (rankedPages == null || (rankedPages.size() < limit && rankedPages.size() < rankedPages.total())) {
+            return null;
+        }
+        return rankedPages;
+    }
+
+    public void put(Key key, RankedPages rankedPages) {
+        cache.put(key, rankedPages);
+    }
+
+    /**
+     * @param limit позиция после последней страницы запрошенного окна
+     * @return сколько лучших страниц ранжировать, чтобы следующие окна того же запроса брались из кэша
+     */
+    public int getDepth(int limit) {
+        return Math.max(limit, depth);
+    }
+
+    public BoundedCache<?, ?> getCache() {
+        return cache;
+    }
+}
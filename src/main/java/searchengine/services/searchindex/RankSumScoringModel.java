@@ -0,0 +1,25 @@
+package searchengine.services.searchindex;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Прежняя формула: сумма rank лемм запроса на странице
+ */
+@Component("rankSum")
+public class RankSumScoringModel implements ScoringModel {
+
+    @Override
+    public String getRankingVersion() {
+        return "rank-sum-1";
+    }
+
+    @Override
+    public float score(int rank, int documentFreq, int pageLength, SiteStatistics siteStatistics) {
+        return rank;
+    }
+
+    @Override
+    public float upperBound(int maxRank, int documentFreq, SiteStatistics siteStatistics) {
+        return maxRank;
+    }
+}
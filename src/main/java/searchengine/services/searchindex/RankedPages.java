@@ -0,0 +1,86 @@
+package searchengine.services.searchindex;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Результат ранжирования: лучшие страницы по убыванию релевантности и точное количество всех найденных страниц.
+ *
+ * @param pageIds  id лучших страниц, от самой релевантной
+ * @param scores   абсолютная релевантность страницы с тем же индексом
+ * @param total    количество всех страниц, подходящих под запрос
+ * @param maxScore   максимальная абсолютная релевантность среди всех найденных страниц
+ * @param siteTotals количество найденных страниц по id сайта, сайтов без найденных страниц нет
+ */
+public record RankedPages(int[] pageIds, float[] scores, int total, float maxScore, Map<Integer, Integer> siteTotals) {
+    public static final RankedPages EMPTY = new RankedPages(new int[0], new float[0], 0, 0, Map.of());
+
+    public int size() {
+        return pageIds.length;
+    }
+
+    /**
+     * @param index позиция в выдаче
+     * @return релевантность страницы относительно самой релевантной страницы
+     */
+    public float relevance(int index) {
+        return maxScore == 0 ? 0 : scores[index] / maxScore;
+    }
+
+    /**
+     * K-way слияние результатов, отранжированных по сайтам независимо. Каждый список уже отсортирован,
+     * поэтому слияние идет кучей по головам списков за O(k log n). Нормировка общая: максимум по всем сайтам,
+     * количество найденных страниц суммируется, количества по сайтам объединяются.
+     *
+     * @param siteRankedPages результаты по сайтам
+     * @param limit           сколько лучших страниц оставить
+     * @return общий результат по убыванию релевантности
+     */
+    public static RankedPages merge(List<RankedPages> siteRankedPages, int limit) {
+        if (siteRankedPages.size() == 1) {
+            return siteRankedPages.get(0);
+        }
+        int total = 0;
+        float maxScore = 0;
+        int available = 0;
+        Map<Integer, Integer> siteTotals = new HashMap<>();
+        for (RankedPages rankedPages : siteRankedPages) {
+            total += rankedPages.total();
+            rankedPages.siteTotals().forEach((siteId, siteTotal) -> siteTotals.merge(siteId, siteTotal, Integer::sum));
+            maxScore = Math.max(maxScore, rankedPages.maxScore());
+            available += rankedPages.size();
+        }
+        int size = Math.min(Math.max(limit, 0), available);
+        int[] pageIds = new int[size];
+        float[] scores = new float[size];
+        int[] cursors = new int[siteRankedPages.size()];
+        PriorityQueue<Integer> heads = new PriorityQueue<>((first, second) -> compareHeads(siteRankedPages, cursors, first, second));
+        for (int i = 0; i < siteRankedPages.size(); i++) {
+            if (siteRankedPages.get(i).size() > 0) {
+                heads.add(i);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int site = heads.poll();
+            RankedPages rankedPages = siteRankedPages.get(site);
+            pageIds[i] = rankedPages.pageIds()[cursors[site]];
+            scores[i] = rankedPages.scores()[cursors[site]];
+            if (++cursors[site] < rankedPages.size()) {
+                heads.add(site);
+            }
+        }
+        return new RankedPages(pageIds, scores, total, maxScore, siteTotals);
+    }
+
+    /**
+     * Порядок тот же, что в TopKCollector: сначала большая релевантность, при равной - меньший id страницы
+     */
+    private static int compareHeads(List<RankedPages> siteRankedPages, int[] cursors, int first, int second) {
+        RankedPages firstPages = siteRankedPages.get(first);
+        RankedPages secondPages = siteRankedPages.get(second);
+        int compare = Float.compare(secondPages.scores()[cursors[second]], firstPages.scores()[cursors[first]]);
+        return compare != 0 ? compare : Integer.compare(firstPages.pageIds()[cursors[first]], secondPages.pageIds()[cursors[second]]);
+    }
+}
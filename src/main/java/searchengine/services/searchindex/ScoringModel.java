@@ -0,0 +1,30 @@
+package searchengine.services.searchindex;
+
+/**
+ * Формула релевантности страницы по одной лемме запроса. Релевантность страницы - сумма по леммам запроса.
+ * Верхняя граница вклада леммы нужна для отсечения кандидатов, которые не могут попасть в лучшие страницы.
+ */
+public interface ScoringModel {
+
+    /**
+     * @return версия формулы, входит в ключ кэша запросов
+     */
+    String getRankingVersion();
+
+    /**
+     * @param rank           количество лемм на странице
+     * @param documentFreq   количество страниц сайта с леммой
+     * @param pageLength     длина страницы в леммах или -1, если она неизвестна
+     * @param siteStatistics статистика страниц сайта
+     * @return вклад леммы в релевантность страницы
+     */
+    float score(int rank, int documentFreq, int pageLength, SiteStatistics siteStatistics);
+
+    /**
+     * @param maxRank        максимальный rank леммы на страницах сайта
+     * @param documentFreq   количество страниц сайта с леммой
+     * @param siteStatistics статистика страниц сайта
+     * @return вклад леммы, больше которого score не вернет ни для одной страницы
+     */
+    float upperBound(int maxRank, int documentFreq, SiteStatistics siteStatistics);
+}
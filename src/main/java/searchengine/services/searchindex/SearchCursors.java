@@ -0,0 +1,73 @@
+package searchengine.services.searchindex;
+
+import org.springframework.stereotype.Component;
+import searchengine.config.SearchSettings;
+import searchengine.model.SiteEntity;
+import searchengine.services.cache.BoundedCache;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Курсоры листания выдачи. Курсор - непрозрачная строка, которая указывает на уже посчитанное ранжирование запроса,
+ * поэтому следующая страница выдачи - срез готового списка и сниппеты. Курсор живет ограниченное время
+ * и действует, пока не изменился индекс сайтов, по которым искали.
+ */
+@Component
+public class SearchCursors {
+    private static final int TOKEN_BYTES = 16;
+
+    private final SecureRandom random = new SecureRandom();
+    private final BoundedCache<String, CursorState> cursors;
+    private final long ttlMillis;
+
+    /**
+     * @param searchQuery  разобранный запрос
+     * @param siteEntities сайты, по которым искали
+     * @param generations  поколения индекса сайтов на момент ранжирования
+     * @param rankedPages  посчитанное ранжирование
+     * @param offset       позиция первой страницы следующего окна
+     * @param expiresAt    время, после которого курсор недействителен
+     */
+    public record CursorState(SearchQuery searchQuery, List<SiteEntity> siteEntities, List<Long> generations,
+                              RankedPages rankedPages, int offset, long expiresAt) {
+    }
+
+    public SearchCursors(SearchSettings searchSettings) {
+        this.cursors = new BoundedCache<>("searchCursors", searchSettings.getCursorCacheSize());
+        this.ttlMillis = searchSettings.getCursorTtlSeconds() * 1000L;
+    }
+
+    /**
+     * @return новый курсор на следующее окно выдачи
+     */
+    public String create(SearchQuery searchQuery, List<SiteEntity> siteEntities, List<Long> generations,
+                         RankedPages rankedPages, int offset) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String cursor = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        cursors.put(cursor, new CursorState(searchQuery, siteEntities, generations, rankedPages, offset,
+                System.currentTimeMillis() + ttlMillis));
+        return cursor;
+    }
+
+    /**
+     * @param cursor курсор из ответа поиска
+     * @return состояние курсора или null, если курсор неизвестен или истек
+     */
+    public CursorState get(String cursor) {
+        CursorState state = cursors.get(cursor);
+        if (state == null || state.expiresAt() < System.currentTimeMillis()) {
+            if (state != null) {
+                cursors.remove(cursor);
+            }
+            return null;
+        }
+        return state;
+    }
+
+    public BoundedCache<?, ?> getCache() {
+        return cursors;
+    }
+}
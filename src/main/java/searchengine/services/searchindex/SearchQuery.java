@@ -0,0 +1,29 @@
+package searchengine.services.searchindex;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Разобранный поисковый запрос
+ *
+ * @param lemmas   все леммы запроса кроме исключенных, по ним считается релевантность и строятся сниппеты
+ * @param groups   группы лемм: страница должна содержать хотя бы одну лемму каждой группы.
+ *                 Группа - леммы одного слова или слов, соединенных через OR
+ * @param excluded леммы слов с минусом, страниц с ними в результате нет
+ * @param phrases  фразы из кавычек, слова которых должны идти на странице подряд
+ */
+public record SearchQuery(Set<String> lemmas, List<Set<String>> groups, Set<String> excluded, List<Phrase> phrases) {
+
+    /**
+     * @param terms слова фразы, у которых есть леммы, в порядке следования
+     */
+    public record Phrase(List<PhraseTerm> terms) {
+    }
+
+    /**
+     * @param offset номер слова относительно первого слова фразы, служебные слова тоже занимают номер
+     * @param lemmas возможные леммы слова
+     */
+    public record PhraseTerm(int offset, List<String> lemmas) {
+    }
+}
@@ -0,0 +1,51 @@
+package searchengine.services.searchindex;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Статистика коллекции страниц сайта для формул релевантности: количество страниц и длина каждой страницы
+ * в леммах. Обновляется вместе с обратным индексом при индексации страниц.
+ */
+public class SiteStatistics {
+    public static final SiteStatistics EMPTY = new SiteStatistics();
+
+    private final ConcurrentHashMap<Integer, Integer> pageLengths = new ConcurrentHashMap<>();
+    private final AtomicLong totalLength = new AtomicLong();
+
+    /**
+     * @param pageId id страницы
+     * @param length количество лемм на странице
+     */
+    public void putPage(int pageId, int length) {
+        Integer previous = pageLengths.put(pageId, length);
+        totalLength.addAndGet(length - (previous == null ? 0 : previous));
+    }
+
+    public void removePage(int pageId) {
+        Integer previous = pageLengths.remove(pageId);
+        if (previous != null) {
+            totalLength.addAndGet(-previous);
+        }
+    }
+
+    public int getDocumentCount() {
+        return pageLengths.size();
+    }
+
+    /**
+     * @return средняя длина страницы в леммах или 0, если страниц нет
+     */
+    public float getAverageLength() {
+        int count = pageLengths.size();
+        return count == 0 ? 0 : (float) totalLength.get() / count;
+    }
+
+    /**
+     * @param pageId id страницы
+     * @return длина страницы в леммах или -1, если она неизвестна
+     */
+    public int getPageLength(int pageId) {
+        return pageLengths.getOrDefault(pageId, -1);
+    }
+}
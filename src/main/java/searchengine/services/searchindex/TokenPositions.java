@@ -0,0 +1,116 @@
+package searchengine.services.searchindex;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Позиции леммы на странице: порядковый номер слова и границы слова в тексте страницы.
+ * В БД хранятся компактно: разности соседних номеров и начал слов плюс длина слова, каждое число - varint.
+ */
+public class TokenPositions {
+    private int[] ordinals = new int[4];
+    private int[] starts = new int[4];
+    private int[] ends = new int[4];
+    private int size;
+
+    @FunctionalInterface
+    public interface PositionConsumer {
+        /**
+         * @param ordinal порядковый номер слова в тексте страницы
+         * @param start   позиция первого символа слова в тексте
+         * @param end     позиция после последнего символа слова в тексте
+         */
+        void accept(int ordinal, int start, int end);
+    }
+
+    /**
+     * Позиции добавляются в порядке появления слов в тексте
+     */
+    public void add(int ordinal, int start, int end) {
+        if (size == ordinals.length) {
+            ordinals = Arrays.copyOf(ordinals, size * 2);
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+        ordinals[size] = ordinal;
+        starts[size] = start;
+        ends[size] = end;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param lemmaPositions Map лемм и их позиций на странице
+     * @return Map лемм и их количества на странице
+     */
+    public static Map<String, Integer> toCounts(Map<String, TokenPositions> lemmaPositions) {
+        Map<String, Integer> lemmaCounts = new HashMap<>();
+        lemmaPositions.forEach((lemma, positions) -> lemmaCounts.put(lemma, positions.size()));
+        return lemmaCounts;
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size * 4);
+        int prevOrdinal = 0;
+        int prevStart = 0;
+        for (int i = 0; i < size; i++) {
+            writeVarInt(out, ordinals[i] - prevOrdinal);
+            writeVarInt(out, starts[i] - prevStart);
+            writeVarInt(out, ends[i] - starts[i]);
+            prevOrdinal = ordinals[i];
+            prevStart = starts[i];
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @param data     позиции, сохраненные через encode
+     * @param consumer получатель позиций в порядке появления слов
+     */
+    public static void decode(byte[] data, PositionConsumer consumer) {
+        int[] cursor = {0};
+        int ordinal = 0;
+        int start = 0;
+        while (cursor[0] < data.length) {
+            ordinal += readVarInt(data, cursor);
+            start += readVarInt(data, cursor);
+            int length = readVarInt(data, cursor);
+            consumer.accept(ordinal, start, start + length);
+        }
+    }
+
+    /**
+     * @param data позиции, сохраненные через encode
+     * @return отсортированные порядковые номера слов
+     */
+    public static int[] decodeOrdinals(byte[] data) {
+        TokenPositions positions = new TokenPositions();
+        decode(data, positions::add);
+        return Arrays.copyOf(positions.ordinals, positions.size);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = data[cursor[0]++];
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+}
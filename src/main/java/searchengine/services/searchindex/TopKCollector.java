@@ -0,0 +1,129 @@
+package searchengine.services.searchindex;
+
+import java.util.Map;
+
+/**
+ * Отбор k самых релевантных страниц через ограниченную min-кучу на примитивных массивах.
+ * Стоимость O(N log k) вместо сортировки всех N найденных страниц, при этом считается точное количество страниц
+ * и максимальная релевантность для нормировки.
+ */
+public class TopKCollector {
+    private final int capacity;
+    private final int[] heapPageIds;
+    private final float[] heapScores;
+    private int heapSize;
+    private int total;
+    private float maxScore;
+
+    /**
+     * @param capacity сколько лучших страниц нужно сохранить
+     */
+    public TopKCollector(int capacity) {
+        this.capacity = Math.max(capacity, 0);
+        this.heapPageIds = new int[this.capacity];
+        this.heapScores = new float[this.capacity];
+    }
+
+    /**
+     * @param pageId id найденной страницы
+     * @param score  абсолютная релевантность страницы
+     */
+    public void offer(int pageId, float score) {
+        total++;
+        maxScore = Math.max(maxScore, score);
+        if (heapSize < capacity) {
+            heapPageIds[heapSize] = pageId;
+            heapScores[heapSize] = score;
+            siftUp(heapSize++);
+        } else if (capacity > 0 && isWorse(heapPageIds[0], heapScores[0], pageId, score)) {
+            heapPageIds[0] = pageId;
+            heapScores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Учитывает страницу, которая подходит под запрос, но отсечена до расчета релевантности,
+     * потому что не может превысить threshold()
+     */
+    public void skip() {
+        total++;
+    }
+
+    /**
+     * @return минимальная релевантность, которую нужно превысить, чтобы попасть в результат,
+     * или отрицательное значение, пока куча не заполнена
+     */
+    public float threshold() {
+        return heapSize < capacity || capacity == 0 ? -1 : heapScores[0];
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    /**
+     * Забирает страницы из кучи, после вызова коллектор пуст
+     * @param siteId id сайта, страницы которого отбирались
+     * @return лучшие страницы по убыванию релевантности
+     */
+    public RankedPages toRankedPages(int siteId) {
+        int[] pageIds = new int[heapSize];
+        float[] scores = new float[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            pageIds[i] = heapPageIds[0];
+            scores[i] = heapScores[0];
+            heapSize--;
+            heapPageIds[0] = heapPageIds[heapSize];
+            heapScores[0] = heapScores[heapSize];
+            siftDown(0);
+        }
+        return new RankedPages(pageIds, scores, total, maxScore, total == 0 ? Map.of() : Map.of(siteId, total));
+    }
+
+    /**
+     * Страница хуже, если у нее меньше релевантность, при равной релевантности - если больше id
+     */
+    private static boolean isWorse(int pageId, float score, int otherPageId, float otherScore) {
+        return score < otherScore || (score == otherScore && pageId > otherPageId);
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >> 1;
+            if (!isWorse(heapPageIds[index], heapScores[index], heapPageIds[parent], heapScores[parent])) {
+                return;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int left = (index << 1) + 1;
+            if (left >= heapSize) {
+                return;
+            }
+            int worst = left;
+            int right = left + 1;
+            if (right < heapSize && isWorse(heapPageIds[right], heapScores[right], heapPageIds[left], heapScores[left])) {
+                worst = right;
+            }
+            if (!isWorse(heapPageIds[worst], heapScores[worst], heapPageIds[index], heapScores[index])) {
+                return;
+            }
+            swap(index, worst);
+            index = worst;
+        }
+    }
+
+    private void swap(int first, int second) {
+        int pageId = heapPageIds[first];
+        heapPageIds[first] = heapPageIds[second];
+        heapPageIds[second] = pageId;
+        float score = heapScores[first];
+        heapScores[first] = heapScores[second];
+        heapScores[second] = score;
+    }
+}
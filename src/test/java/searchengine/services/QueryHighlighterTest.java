@@ -0,0 +1,48 @@
+package searchengine.services;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import searchengine.config.MorphologySettings;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class QueryHighlighterTest {
+    private static Lemmatizer lemmatizer;
+
+    @BeforeAll
+    static void loadMorphology() throws IOException {
+        lemmatizer = new Lemmatizer(new MorphologySettings());
+    }
+
+    @Test
+    void findsFormWithSameStem() {
+        assertEquals(List.of("котами"), findWords("Дом с котами", "кот"));
+    }
+
+    @Test
+    void findsFormWithFleetingVowel() {
+        assertEquals(List.of("дня", "день"), findWords("Три дня назад был хороший день", "день"));
+    }
+
+    @Test
+    void findsSuppletiveForm() {
+        assertEquals(List.of("шёл"), findWords("Он шёл домой", "идти"));
+    }
+
+    @Test
+    void skipsWordsOfOtherLemmas() {
+        assertEquals(List.of(), findWords("Котел кипит на кухне", "кот"));
+    }
+
+    private static List<String> findWords(String text, String lemma) {
+        List<String> words = new ArrayList<>();
+        new QueryHighlighter(lemmatizer, Set.of(lemma))
+                .findMatches(text, (start, end, queryLemma) -> words.add(text.substring(start, end)));
+        return words;
+    }
+}